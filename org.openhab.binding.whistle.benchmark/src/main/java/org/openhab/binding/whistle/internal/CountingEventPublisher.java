@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.events.EventPublisher;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * Counts the updates the binding publishes, and otherwise drops them.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class CountingEventPublisher implements EventPublisher {
+    final AtomicLong updates = new AtomicLong();
+
+    @Override
+    public void postUpdate(String itemName, State newState) {
+        updates.incrementAndGet();
+    }
+
+    @Override
+    public void postCommand(String itemName, Command command) {
+    }
+
+    @Override
+    public void sendCommand(String itemName, Command command) {
+    }
+}
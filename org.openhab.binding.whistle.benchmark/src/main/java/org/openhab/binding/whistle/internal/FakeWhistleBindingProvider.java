@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openhab.binding.whistle.WhistleBindingProvider;
+import org.openhab.core.binding.BindingChangeListener;
+
+/**
+ * Binding provider with a fixed set of items. Each dog has one item for each
+ * of {@link #BINDINGS}, so the refresh cycle reads all endpoints.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class FakeWhistleBindingProvider implements WhistleBindingProvider {
+    static final String[][] BINDINGS = { { "activity", "0" }, { "target", "0" }, { "device", "battery" },
+            { "goals", "current" }, { "averageactive", "7" }, { "averagerest", "7" } };
+
+    private final Map<String, String[]> items = new HashMap<String, String[]>();
+    private final List<String> itemNames = new ArrayList<String>();
+
+    /**
+     * Creates the given number of resolved items, for as many dogs as needed.
+     */
+    FakeWhistleBindingProvider(int itemCount) {
+        this(itemCount, false);
+    }
+
+    /**
+     * Creates the given number of items, for as many dogs as needed. Pending
+     * items are resolved by the binding, like those of an items file.
+     */
+    FakeWhistleBindingProvider(int itemCount, boolean pending) {
+        for (int i = 0; i < itemCount; i++) {
+            int dog = i / BINDINGS.length;
+            String[] binding = BINDINGS[i % BINDINGS.length];
+            String itemName = "Dog" + dog + "_" + binding[0] + "_" + binding[1];
+            String deviceID = pending ? null : WhistlePayloads.deviceID(dog);
+            items.put(itemName, new String[] { WhistlePayloads.dogID(dog), deviceID, binding[0], binding[1] });
+            itemNames.add(itemName);
+        }
+    }
+
+    static int getDogCount(int itemCount) {
+        return (itemCount + BINDINGS.length - 1) / BINDINGS.length;
+    }
+
+    @Override
+    public String getDogID(String itemName) {
+        return items.get(itemName)[0];
+    }
+
+    @Override
+    public String getAccount(String itemName) {
+        return "";
+    }
+
+    @Override
+    public String getDeviceID(String itemName) {
+        return items.get(itemName)[1];
+    }
+
+    @Override
+    public String getCommand(String itemName) {
+        return items.get(itemName)[2];
+    }
+
+    @Override
+    public String getParameter(String itemName) {
+        return items.get(itemName)[3];
+    }
+
+    @Override
+    public long getRefreshInterval(String itemName) {
+        return 0;
+    }
+
+    @Override
+    public double getDeadband(String itemName) {
+        return 0;
+    }
+
+    @Override
+    public boolean isDeadbandPercent(String itemName) {
+        return false;
+    }
+
+    @Override
+    public long getRepublishInterval(String itemName) {
+        return 0;
+    }
+
+    @Override
+    public boolean isPending(String itemName) {
+        return items.get(itemName)[1] == null;
+    }
+
+    @Override
+    public void setDeviceID(String itemName, String deviceID) {
+        items.get(itemName)[1] = deviceID;
+    }
+
+    @Override
+    public void addBindingChangeListener(BindingChangeListener listener) {
+    }
+
+    @Override
+    public void removeBindingChangeListener(BindingChangeListener listener) {
+    }
+
+    @Override
+    public boolean providesBindingFor(String itemName) {
+        return items.containsKey(itemName);
+    }
+
+    @Override
+    public boolean providesBinding() {
+        return !items.isEmpty();
+    }
+
+    @Override
+    public Collection<String> getItemNames() {
+        return itemNames;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process {@link WhistleTransport} answering with {@link WhistlePayloads},
+ * so benchmarks measure the binding rather than the network. Responses carry
+ * an ETag if asked to, and conditional requests are then answered with 304.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class FakeWhistleTransport implements WhistleTransport {
+    private static final String ETAG = "\"benchmark\"";
+
+    private final byte[] dailies;
+    private final byte[] dailyTotals;
+    private final byte[] dogs;
+    private final byte[] device = WhistlePayloads.device();
+    private final byte[] goals = WhistlePayloads.goals();
+    private final byte[] token = WhistlePayloads.token();
+    private final boolean etag;
+    private final AtomicLong requests = new AtomicLong();
+
+    FakeWhistleTransport(int dogCount, int days, boolean etag) {
+        this.dailies = WhistlePayloads.dailies(days);
+        this.dailyTotals = WhistlePayloads.dailyTotals(days);
+        this.dogs = WhistlePayloads.dogs(dogCount);
+        this.etag = etag;
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void configure(int connectTimeout, int readTimeout, int maxConnections) {
+    }
+
+    @Override
+    public Exchange send(String url, Map<String, String> headers, String body) {
+        requests.incrementAndGet();
+        if (url.endsWith("tokens.json")) {
+            return new FakeExchange(200, token, null);
+        }
+        if (etag && ETAG.equals(headers.get("If-None-Match"))) {
+            return new FakeExchange(304, null, ETAG);
+        }
+        byte[] payload;
+        if (url.endsWith("dogs.json")) {
+            payload = dogs;
+        } else if (url.contains("/devices/")) {
+            payload = device;
+        } else if (url.contains("/dailies")) {
+            payload = dailies;
+        } else if (url.contains("/stats/daily_totals")) {
+            payload = dailyTotals;
+        } else if (url.contains("/stats/goals")) {
+            payload = goals;
+        } else {
+            return new FakeExchange(404, new byte[0], null);
+        }
+        return new FakeExchange(200, payload, etag ? ETAG : null);
+    }
+
+    @Override
+    public void closeIdleConnections() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    private static class FakeExchange implements Exchange {
+        private final int status;
+        private final byte[] body;
+        private final String etag;
+
+        FakeExchange(int status, byte[] body, String etag) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return "ETag".equals(name) ? etag : null;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body != null ? body : new byte[0]);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The binding with refresh cycles run by the caller rather than its refresh
+ * thread. By default every resource is fetched in each cycle.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class ManualWhistleBinding extends WhistleBinding {
+    private final long tick;
+
+    ManualWhistleBinding() {
+        // Anything due within half a day counts as due now
+        this(TimeUnit.DAYS.toMillis(1));
+    }
+
+    /**
+     * Runs cycles as ticks of the given length, which only fetch the resources
+     * due within half a tick.
+     */
+    ManualWhistleBinding(long tick) {
+        this.tick = tick;
+    }
+
+    @Override
+    protected long getRefreshInterval() {
+        return tick;
+    }
+
+    @Override
+    public boolean isProperlyConfigured() {
+        // Keeps the refresh thread from running cycles of its own
+        return false;
+    }
+}
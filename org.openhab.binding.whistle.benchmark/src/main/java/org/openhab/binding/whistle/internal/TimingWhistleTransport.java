@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Records the latency of each request sent through another transport: the
+ * time until the response status and headers have been received.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class TimingWhistleTransport implements WhistleTransport {
+    private final WhistleTransport transport;
+    private long[] latencies = new long[1024];
+    private int count;
+    private int failures;
+
+    TimingWhistleTransport(WhistleTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public void configure(int connectTimeout, int readTimeout, int maxConnections) {
+        transport.configure(connectTimeout, readTimeout, maxConnections);
+    }
+
+    @Override
+    public Exchange send(String url, Map<String, String> headers, String body) throws IOException {
+        long start = System.nanoTime();
+        final Exchange exchange;
+        try {
+            exchange = transport.send(url, headers, body);
+        } catch (IOException e) {
+            record(System.nanoTime() - start, true);
+            throw e;
+        }
+        record(System.nanoTime() - start, exchange.getStatus() >= 400);
+        return exchange;
+    }
+
+    @Override
+    public void closeIdleConnections() {
+        transport.closeIdleConnections();
+    }
+
+    @Override
+    public void shutdown() {
+        transport.shutdown();
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Requests that failed or were answered with a status of 400 or above.
+     */
+    synchronized int getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * Returns the latency below which the given fraction of the requests
+     * completed, in milliseconds.
+     */
+    synchronized double getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1e6;
+    }
+
+    synchronized void reset() {
+        count = 0;
+        failures = 0;
+    }
+
+    private synchronized void record(long nanos, boolean failed) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+        if (failed) {
+            failures++;
+        }
+    }
+}
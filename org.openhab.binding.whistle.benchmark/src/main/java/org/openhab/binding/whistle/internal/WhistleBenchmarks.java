@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the Whistle benchmarks with the GC profiler, which adds the allocation
+ * rate per operation to the throughput. Takes the usual JMH options, e.g. a
+ * benchmark name pattern or <code>-p items=600</code>.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleBenchmarks {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options).addProfiler(GCProfiler.class);
+        if (options.getIncludes().isEmpty()) {
+            builder.include("org\\.openhab\\.binding\\.whistle\\..*Benchmark");
+        }
+        new Runner(builder.build()).run();
+    }
+}
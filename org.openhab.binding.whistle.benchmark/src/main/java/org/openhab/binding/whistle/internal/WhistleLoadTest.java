@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * Drives the binding against a {@link WhistleSimulator} and reports cycle
+ * durations, requests per endpoint and request latencies. Options are given
+ * as <code>name=value</code>:
+ * <ul>
+ * <li><code>dogs</code>: synthetic dogs, each with an item per endpoint (1000)</li>
+ * <li><code>cycles</code>: refresh cycles to run (5)</li>
+ * <li><code>latency</code>, <code>jitter</code>: added to each response, in ms (50, 0)</li>
+ * <li><code>errors</code>: fraction of requests answered with 503 (0)</li>
+ * <li><code>unauthorized</code>: fraction of requests rejecting the token (0)</li>
+ * <li><code>concurrency</code>: requests the binding runs at once (4)</li>
+ * <li><code>threads</code>: simulator threads (32)</li>
+ * <li><code>port</code>: simulator port, any free one if 0 (0)</li>
+ * </ul>
+ * Other options are passed to the binding as configuration, e.g.
+ * <code>ratelimit=5</code>.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleLoadTest {
+    public static void main(String[] args) throws IOException, ConfigurationException {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("Expected name=value: " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        int dogs = Integer.parseInt(remove(options, "dogs", "1000"));
+        int cycles = Integer.parseInt(remove(options, "cycles", "5"));
+        int concurrency = Integer.parseInt(remove(options, "concurrency", "4"));
+
+        WhistleSimulator simulator = new WhistleSimulator(dogs);
+        simulator.setLatency(Long.parseLong(remove(options, "latency", "50")),
+                Long.parseLong(remove(options, "jitter", "0")));
+        simulator.setErrorRate(Double.parseDouble(remove(options, "errors", "0")));
+        simulator.setUnauthorizedRate(Double.parseDouble(remove(options, "unauthorized", "0")));
+        simulator.start(Integer.parseInt(remove(options, "port", "0")),
+                Integer.parseInt(remove(options, "threads", "32")));
+
+        File dataDir = File.createTempFile("whistle", "loadtest");
+        if (!dataDir.delete() || !dataDir.mkdir()) {
+            throw new IOException("Failed to create " + dataDir);
+        }
+        TimingWhistleTransport transport = new TimingWhistleTransport(new WhistleHttpTransport());
+        ManualWhistleBinding binding = new ManualWhistleBinding();
+        binding.setTransport(transport);
+        CountingEventPublisher eventPublisher = new CountingEventPublisher();
+        binding.setEventPublisher(eventPublisher);
+        FakeWhistleBindingProvider provider = new FakeWhistleBindingProvider(
+                dogs * FakeWhistleBindingProvider.BINDINGS.length, true);
+        binding.addBindingProvider(provider);
+        Hashtable<String, String> config = new Hashtable<String, String>();
+        config.put("apiroot", simulator.getApiRoot());
+        config.put("username", "loadtest");
+        config.put("password", "loadtest");
+        config.put("datadir", dataDir.getPath());
+        config.put("ratelimit", "0");
+        config.put("concurrency", String.valueOf(concurrency));
+        config.put("maxconnections", String.valueOf(concurrency));
+        config.putAll(options);
+        binding.updated(config);
+
+        System.out.println(String.format("%d dogs, %d items, concurrency %d, against %s", dogs,
+                provider.getItemNames().size(), concurrency, simulator.getApiRoot()));
+        long total = 0;
+        long slowest = 0;
+        try {
+            for (int cycle = 1; cycle <= cycles; cycle++) {
+                long requests = transport.getCount();
+                long updates = eventPublisher.updates.get();
+                long start = System.nanoTime();
+                binding.execute();
+                long duration = (System.nanoTime() - start) / 1000000;
+                total += duration;
+                slowest = Math.max(slowest, duration);
+                System.out.println(String.format("cycle %d: %d ms, %d requests, %d items published", cycle,
+                        duration, transport.getCount() - requests, eventPublisher.updates.get() - updates));
+            }
+            System.out.println(String.format("cycles: %d ms average, %d ms slowest", total / Math.max(1, cycles),
+                    slowest));
+            StringBuilder endpoints = new StringBuilder("requests:");
+            for (String endpoint : WhistleSimulator.ENDPOINTS) {
+                endpoints.append(' ').append(endpoint).append('=').append(simulator.getRequestCount(endpoint));
+            }
+            System.out.println(endpoints);
+            System.out.println(String.format("injected: %d errors, %d rejected tokens; failed requests: %d",
+                    simulator.getErrorCount(), simulator.getUnauthorizedCount(), transport.getFailureCount()));
+            System.out.println(String.format("latency: p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    transport.getPercentile(0.5), transport.getPercentile(0.99), transport.getPercentile(1)));
+        } finally {
+            binding.deactivate();
+            simulator.stop();
+            File[] files = dataDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dataDir.delete();
+        }
+    }
+
+    private static String remove(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value != null ? value : defaultValue;
+    }
+}
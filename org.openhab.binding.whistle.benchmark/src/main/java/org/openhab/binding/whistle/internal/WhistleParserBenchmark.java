@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Parses dailies, daily_totals and dogs.json responses of several sizes with
+ * the streaming parsers, and with a Gson tree as the binding used to, reading
+ * the same fields from both.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WhistleParserBenchmark {
+    // Days of dailies and daily_totals, or dogs in dogs.json
+    @Param({ "7", "90", "1000" })
+    int size;
+
+    private byte[] dailies;
+    private byte[] dailyTotals;
+    private byte[] dogs;
+
+    @Setup
+    public void setUp() {
+        dailies = WhistlePayloads.dailies(size);
+        dailyTotals = WhistlePayloads.dailyTotals(size);
+        dogs = WhistlePayloads.dogs(size);
+    }
+
+    @Benchmark
+    public WhistleDailies streamingDailies() throws IOException {
+        return WhistleJsonParser.DAILIES.handle(new ByteArrayInputStream(dailies));
+    }
+
+    @Benchmark
+    public long treeDailies() throws IOException {
+        long sum = 0;
+        for (JsonElement element : parseArray(dailies)) {
+            JsonObject daily = element.getAsJsonObject();
+            sum += daily.get("day_number").getAsLong() + daily.get("minutes_active").getAsLong()
+                    + daily.get("activity_goal").getAsLong();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public WhistleDailies streamingDailyTotals() throws IOException {
+        return WhistleJsonParser.DAILY_TOTALS.handle(new ByteArrayInputStream(dailyTotals));
+    }
+
+    @Benchmark
+    public long treeDailyTotals() throws IOException {
+        long sum = 0;
+        for (JsonElement element : parseArray(dailyTotals)) {
+            JsonObject total = element.getAsJsonObject();
+            sum += total.get("minutes_active").getAsInt() + total.get("minutes_rest").getAsInt();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public List<WhistleRoster.Dog> streamingDogs() throws IOException {
+        return WhistleJsonParser.DOGS.handle(new ByteArrayInputStream(dogs));
+    }
+
+    @Benchmark
+    public int treeDogs() throws IOException {
+        int hash = 0;
+        for (JsonElement element : parseArray(dogs)) {
+            JsonObject dog = element.getAsJsonObject();
+            hash += dog.get("id").getAsString().hashCode() + dog.get("device_id").getAsString().hashCode()
+                    + dog.get("name").getAsString().hashCode();
+        }
+        return hash;
+    }
+
+    /*
+     * As before the streaming parsers: the body read into a string, then into a tree
+     */
+    private static JsonArray parseArray(byte[] body) throws IOException {
+        StringBuilder response = new StringBuilder();
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(body), "UTF-8");
+        char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            response.append(buffer, 0, read);
+        }
+        return new Gson().fromJson(response.toString(), JsonArray.class);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.nio.charset.Charset;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Synthetic Whistle API responses. Records carry the fields of the real API
+ * besides the ones the binding reads, so parsers pay for skipping them too.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+final class WhistlePayloads {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private WhistlePayloads() {
+    }
+
+    /**
+     * <code>dogs/{id}/dailies</code> with the given number of days, ending today.
+     */
+    static byte[] dailies(int days) {
+        int today = WhistleDailyStore.today();
+        return dailies(today - days + 1, today);
+    }
+
+    /**
+     * <code>dogs/{id}/dailies</code> from <code>fromDay</code> through <code>toDay</code>, newest first.
+     */
+    static byte[] dailies(int fromDay, int toDay) {
+        StringBuilder json = new StringBuilder(Math.max(0, toDay - fromDay + 1) * 320).append('[');
+        for (int day = toDay; day >= fromDay; day--) {
+            if (day < toDay) {
+                json.append(',');
+            }
+            json.append("{\"day_number\":").append(day).append(",\"timestamp\":\"").append(date(day))
+                    .append("T00:00:00-08:00\",\"minutes_active\":").append(30 + day % 90)
+                    .append(",\"minutes_rest\":").append(800 + day % 300).append(",\"activity_goal\":60")
+                    .append(",\"distance\":").append(1.5 + (day % 40) / 10.0).append(",\"calories\":")
+                    .append(400 + day % 200).append(",\"updated_at\":\"").append(date(day))
+                    .append("T23:59:59Z\",\"excluded\":false,\"bark_count\":null}");
+        }
+        return json.append(']').toString().getBytes(UTF8);
+    }
+
+    /**
+     * <code>dogs/{id}/stats/daily_totals</code> with the given number of days, ending today.
+     */
+    static byte[] dailyTotals(int days) {
+        int today = WhistleDailyStore.today();
+        return dailyTotals(today - days + 1, today);
+    }
+
+    /**
+     * <code>dogs/{id}/stats/daily_totals</code> from <code>fromDay</code> through <code>toDay</code>, oldest
+     * first and without day numbers, as the binding read them before it kept a store.
+     */
+    static byte[] dailyTotals(int fromDay, int toDay) {
+        StringBuilder json = new StringBuilder(Math.max(0, toDay - fromDay + 1) * 160).append('[');
+        for (int day = fromDay; day <= toDay; day++) {
+            if (day > fromDay) {
+                json.append(',');
+            }
+            json.append("{\"date\":\"").append(date(day)).append("\",\"minutes_active\":").append(30 + day % 90)
+                    .append(",\"minutes_rest\":").append(800 + day % 300).append(",\"minutes_unknown\":")
+                    .append(day % 60).append('}');
+        }
+        return json.append(']').toString().getBytes(UTF8);
+    }
+
+    /**
+     * <code>dogs.json</code> with the given number of dogs, named as by {@link #dogID(int)}.
+     */
+    static byte[] dogs(int count) {
+        StringBuilder json = new StringBuilder(count * 360).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(dogID(i)).append("\",\"device_id\":\"").append(deviceID(i))
+                    .append("\",\"name\":\"Dog ").append(i).append("\",\"breed\":{\"id\":").append(i % 300)
+                    .append(",\"name\":\"Mixed\"},\"gender\":\"f\",\"weight\":").append(5 + i % 40)
+                    .append(",\"birthday\":\"2012-03-04\",\"profile_photo_url\":\"https://example.org/dogs/")
+                    .append(i).append(".jpg\",\"owners\":[{\"id\":").append(i).append(",\"first_name\":\"Owner\"}]}");
+        }
+        return json.append(']').toString().getBytes(UTF8);
+    }
+
+    /**
+     * <code>devices/{id}.json</code>
+     */
+    static byte[] device() {
+        return ("{\"serial_number\":\"01-0123456\",\"battery_level\":71.83333333,\"battery_status\":\"on\","
+                + "\"last_check_in\":\"2016-05-01T12:34:56-07:00\",\"firmware_version\":\"1.2.3\","
+                + "\"wifi_network\":{\"ssid\":\"home\",\"rssi\":-60}}").getBytes(UTF8);
+    }
+
+    /**
+     * <code>dogs/{id}/stats/goals</code>
+     */
+    static byte[] goals() {
+        return "{\"current_streak\":4,\"longest_streak\":27,\"current_minimum\":60}".getBytes(UTF8);
+    }
+
+    /**
+     * <code>tokens.json</code>
+     */
+    static byte[] token() {
+        return "{\"token\":\"benchmark-token\",\"user\":{\"id\":1}}".getBytes(UTF8);
+    }
+
+    static String dogID(int index) {
+        return "dog" + index;
+    }
+
+    static String deviceID(int index) {
+        return "device" + index;
+    }
+
+    private static String date(int day) {
+        DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(day * MILLIS_PER_DAY));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * Runs refresh cycles of the binding with N items against an in-process
+ * transport, ticks with nothing due, and the dispatch of already fetched data
+ * to the items.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WhistleRefreshBenchmark {
+    // Days of history served by dailies and daily_totals
+    private static final int DAYS = 30;
+
+    @Param({ "60", "600", "3000", "6000" })
+    int items;
+
+    // Whether the transport answers repeated requests with 304
+    @Param({ "false", "true" })
+    boolean etag;
+
+    private File dataDir;
+    private FakeWhistleTransport transport;
+    private FakeWhistleBindingProvider provider;
+    private ManualWhistleBinding binding;
+    // Ticks every minute, with every resource refreshed less often
+    private ManualWhistleBinding idleBinding;
+    private Object[] data;
+    private final CountingEventPublisher eventPublisher = new CountingEventPublisher();
+
+    @Setup
+    public void setUp() throws IOException, ConfigurationException {
+        dataDir = File.createTempFile("whistle", "benchmark");
+        if (!dataDir.delete() || !dataDir.mkdir()) {
+            throw new IOException("Failed to create " + dataDir);
+        }
+        transport = new FakeWhistleTransport(FakeWhistleBindingProvider.getDogCount(items), DAYS, etag);
+        provider = new FakeWhistleBindingProvider(items);
+        binding = createBinding(new ManualWhistleBinding());
+        idleBinding = createBinding(new ManualWhistleBinding(TimeUnit.MINUTES.toMillis(1)));
+
+        // The data each item reads, as it is after fetching
+        WhistleDailyStore dailies = new WhistleDailyStore();
+        WhistleDailyStore dailyTotals = new WhistleDailyStore();
+        int today = WhistleDailyStore.today();
+        dailies.merge(WhistleJsonParser.DAILIES.handle(new ByteArrayInputStream(WhistlePayloads.dailies(DAYS))),
+                today - DAYS + 1, today);
+        dailyTotals.merge(WhistleJsonParser.DAILY_TOTALS.handle(new ByteArrayInputStream(WhistlePayloads
+                .dailyTotals(DAYS))), today - DAYS + 1, today);
+        WhistleJsonParser.Device device = WhistleJsonParser.DEVICE.handle(new ByteArrayInputStream(WhistlePayloads
+                .device()));
+        WhistleJsonParser.Goals goals = WhistleJsonParser.GOALS.handle(new ByteArrayInputStream(WhistlePayloads
+                .goals()));
+        data = new Object[items];
+        int i = 0;
+        for (String itemName : provider.getItemNames()) {
+            switch (WhistleCommand.of(provider.getCommand(itemName))) {
+                case ACTIVITY:
+                case TARGET:
+                    data[i++] = dailies;
+                    break;
+                case DEVICE:
+                    data[i++] = device;
+                    break;
+                case GOALS:
+                    data[i++] = goals;
+                    break;
+                default:
+                    data[i++] = dailyTotals;
+            }
+        }
+    }
+
+    private ManualWhistleBinding createBinding(ManualWhistleBinding binding) throws ConfigurationException {
+        binding.setTransport(transport);
+        binding.setEventPublisher(eventPublisher);
+        binding.addBindingProvider(provider);
+        Hashtable<String, String> config = new Hashtable<String, String>();
+        config.put("username", "benchmark");
+        config.put("password", "benchmark");
+        config.put("datadir", dataDir.getPath());
+        config.put("ratelimit", "0");
+        binding.updated(config);
+        // One cycle to log in and fill the daily stores
+        binding.execute();
+        return binding;
+    }
+
+    @TearDown
+    public void tearDown() {
+        binding.deactivate();
+        idleBinding.deactivate();
+        File[] files = dataDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dataDir.delete();
+    }
+
+    /**
+     * A full refresh cycle: planning, fetching every resource, parsing and publishing.
+     */
+    @Benchmark
+    public long execute() {
+        binding.execute();
+        return eventPublisher.updates.get();
+    }
+
+    /**
+     * A tick of the scheduler between refreshes, with nothing due.
+     */
+    @Benchmark
+    public long tick() {
+        idleBinding.execute();
+        return eventPublisher.updates.get();
+    }
+
+    /**
+     * Publishing the items from fetched data.
+     */
+    @Benchmark
+    public long dispatch() {
+        int i = 0;
+        for (String itemName : provider.getItemNames()) {
+            binding.updateWhistle(provider, itemName, data[i++], true);
+        }
+        return eventPublisher.updates.get();
+    }
+}
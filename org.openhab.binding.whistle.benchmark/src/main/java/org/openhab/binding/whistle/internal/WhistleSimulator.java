@@ -0,0 +1,377 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the Whistle API, serving synthetic dogs over HTTP. It
+ * answers <code>tokens.json</code>, <code>dogs.json</code>,
+ * <code>devices/{id}.json</code>, <code>dogs/{id}/dailies</code>,
+ * <code>dogs/{id}/stats/goals</code> and
+ * <code>dogs/{id}/stats/daily_totals</code> below <code>/api/</code>, so the
+ * binding can use it by setting <code>whistle:apiroot</code>.
+ * <p>
+ * Latency, server errors and rejected tokens can be injected to reproduce a
+ * slow or failing API. A rejected token is replaced by a new one on the next
+ * login, as if it had expired.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleSimulator {
+    static final String[] ENDPOINTS = { "tokens", "dogs", "devices", "dailies", "goals", "daily_totals" };
+
+    private final int dogCount;
+    private final Random random = new Random();
+    private final Map<String, AtomicLong> requests = new LinkedHashMap<String, AtomicLong>();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong unauthorized = new AtomicLong();
+    private final AtomicInteger tokenVersion = new AtomicInteger();
+    // Responses only depend on the endpoint and the days, not on the dog
+    private final ConcurrentMap<String, byte[]> payloads = new ConcurrentHashMap<String, byte[]>();
+    private volatile long latency;
+    private volatile long latencyJitter;
+    private volatile double errorRate;
+    private volatile double unauthorizedRate;
+    private volatile boolean compression = true;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    WhistleSimulator(int dogCount) {
+        this.dogCount = dogCount;
+        for (String endpoint : ENDPOINTS) {
+            requests.put(endpoint, new AtomicLong());
+        }
+    }
+
+    /**
+     * Delays each response by <code>latency</code> plus up to
+     * <code>jitter</code> milliseconds.
+     */
+    void setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.latencyJitter = jitter;
+    }
+
+    /**
+     * Answers this fraction of the requests with 503.
+     */
+    void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Rejects the token of this fraction of the requests with 401.
+     */
+    void setUnauthorizedRate(double unauthorizedRate) {
+        this.unauthorizedRate = unauthorizedRate;
+    }
+
+    /**
+     * Whether to gzip responses for clients accepting it.
+     */
+    void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Starts serving on the port, or on any free port if it is 0.
+     */
+    void start(int port, int threads) throws IOException {
+        // Without TCP_NODELAY each response waits for a delayed ACK, ~40 ms, so cycles would measure the
+        // simulator; read once, when the first server is created
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 128);
+        executor = Executors.newFixedThreadPool(threads, new WhistleThreadFactory("Whistle simulator"));
+        server.setExecutor(executor);
+        server.createContext("/api/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Returns the URL to configure as <code>whistle:apiroot</code>.
+     */
+    String getApiRoot() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/";
+    }
+
+    long getRequestCount(String endpoint) {
+        return requests.get(endpoint).get();
+    }
+
+    long getErrorCount() {
+        return errors.get();
+    }
+
+    long getUnauthorizedCount() {
+        return unauthorized.get();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring("/api/".length());
+        String query = exchange.getRequestURI().getQuery();
+        drain(exchange.getRequestBody());
+        String endpoint = getEndpoint(path);
+        if (endpoint == null) {
+            send(exchange, 404, null);
+            return;
+        }
+        requests.get(endpoint).incrementAndGet();
+        sleep();
+        if (random.nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            send(exchange, 503, null);
+            return;
+        }
+        if ("tokens".equals(endpoint)) {
+            send(exchange, 200, ("{\"token\":\"" + getToken() + "\"}").getBytes("UTF-8"));
+            return;
+        }
+        if (!getToken().equals(exchange.getRequestHeaders().getFirst("X-Whistle-AuthToken"))) {
+            send(exchange, 401, null);
+            return;
+        }
+        if (random.nextDouble() < unauthorizedRate) {
+            // The token expired
+            unauthorized.incrementAndGet();
+            tokenVersion.incrementAndGet();
+            send(exchange, 401, null);
+            return;
+        }
+        String dogID = getDogID(path);
+        if (dogID != null && !isDog(dogID)) {
+            send(exchange, 404, null);
+            return;
+        }
+        byte[] payload;
+        switch (endpoint) {
+            case "dogs":
+                payload = getPayload("dogs", dogCount);
+                break;
+            case "devices":
+                payload = getPayload("devices", 0);
+                break;
+            case "dailies":
+                // Only known to take a number of days back from today
+                int today = WhistleDailyStore.today();
+                payload = getPayload("dailies", today - getCount(query) + 1, today);
+                break;
+            case "goals":
+                payload = getPayload("goals", 0);
+                break;
+            default:
+                payload = getPayload("daily_totals", getStartDay(query, 1), getEndDay(query));
+        }
+        String etag = "\"" + Arrays.hashCode(payload) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            send(exchange, 304, null);
+            return;
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (compression && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 4);
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(payload);
+            out.close();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            payload = compressed.toByteArray();
+        }
+        send(exchange, 200, payload);
+    }
+
+    private static String getEndpoint(String path) {
+        if (path.equals("tokens.json")) {
+            return "tokens";
+        } else if (path.equals("dogs.json")) {
+            return "dogs";
+        } else if (path.startsWith("devices/") && path.endsWith(".json")) {
+            return "devices";
+        } else if (path.startsWith("dogs/") && path.endsWith("/dailies")) {
+            return "dailies";
+        } else if (path.startsWith("dogs/") && path.endsWith("/stats/goals")) {
+            return "goals";
+        } else if (path.startsWith("dogs/") && path.contains("/stats/daily_totals")) {
+            return "daily_totals";
+        }
+        return null;
+    }
+
+    private static String getDogID(String path) {
+        if (!path.startsWith("dogs/")) {
+            return null;
+        }
+        int end = path.indexOf('/', "dogs/".length());
+        return end > 0 ? path.substring("dogs/".length(), end) : null;
+    }
+
+    private boolean isDog(String dogID) {
+        if (!dogID.startsWith("dog")) {
+            return false;
+        }
+        try {
+            int index = Integer.parseInt(dogID.substring("dog".length()));
+            return index >= 0 && index < dogCount;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private String getToken() {
+        return "simulated-" + tokenVersion.get();
+    }
+
+    private byte[] getPayload(String endpoint, int size) {
+        return getPayload(endpoint, size, 0);
+    }
+
+    // For the daily records, size is the first day and end the last one
+    private byte[] getPayload(String endpoint, int size, int end) {
+        String key = endpoint + ":" + size + ":" + end;
+        byte[] payload = payloads.get(key);
+        if (payload == null) {
+            switch (endpoint) {
+                case "dogs":
+                    payload = WhistlePayloads.dogs(size);
+                    break;
+                case "devices":
+                    payload = WhistlePayloads.device();
+                    break;
+                case "dailies":
+                    payload = WhistlePayloads.dailies(size, end);
+                    break;
+                case "goals":
+                    payload = WhistlePayloads.goals();
+                    break;
+                default:
+                    payload = WhistlePayloads.dailyTotals(size, end);
+            }
+            payloads.putIfAbsent(key, payload);
+        }
+        return payload;
+    }
+
+    // Days requested by '?count=N'
+    private static int getCount(String query) {
+        String count = getQueryParameter(query, "count");
+        try {
+            return count != null ? Math.max(1, Integer.parseInt(count)) : 1;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    // Day of '?start_time=yyyy-MM-dd', or the given number of days through the end day
+    private static int getStartDay(String query, int days) {
+        int startDay = parseDay(getQueryParameter(query, "start_time"));
+        return startDay >= 0 ? startDay : getEndDay(query) - days + 1;
+    }
+
+    // Day of '?end_time=yyyy-MM-dd', or today
+    private static int getEndDay(String query) {
+        int endDay = parseDay(getQueryParameter(query, "end_time"));
+        return endDay >= 0 ? Math.min(endDay, WhistleDailyStore.today()) : WhistleDailyStore.today();
+    }
+
+    // Day number of a yyyy-MM-dd date, or -1
+    private static int parseDay(String date) {
+        if (date == null) {
+            return -1;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return (int) (format.parse(date).getTime() / (24 * 60 * 60 * 1000L));
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static String getQueryParameter(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return parameter.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private void sleep() {
+        long delay = latency + (latencyJitter > 0 ? (long) (random.nextDouble() * latencyJitter) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (in.read(buffer) != -1) {
+            // Discard the request body
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests releasing the connections of an account.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleAccountTest {
+    @Test
+    public void shutdownReleasesTheTransport() {
+        WhistleAccount account = new WhistleAccount("home", new WhistleMetrics());
+        CountingTransport transport = new CountingTransport();
+        account.setTransport(transport);
+        account.shutdown();
+        assertEquals(1, transport.shutdowns);
+    }
+
+    @Test
+    public void replacedTransportIsShutDown() {
+        WhistleAccount account = new WhistleAccount("home", new WhistleMetrics());
+        CountingTransport first = new CountingTransport();
+        CountingTransport second = new CountingTransport();
+        account.setTransport(first);
+        account.setTransport(first);
+        assertEquals(0, first.shutdowns);
+        account.setTransport(second);
+        assertEquals(1, first.shutdowns);
+        account.shutdown();
+        assertEquals(1, second.shutdowns);
+    }
+
+    // Counts shutdowns; sends nothing
+    private static class CountingTransport implements WhistleTransport {
+        private int shutdowns;
+
+        @Override
+        public void configure(int connectTimeout, int readTimeout, int maxConnections) {
+        }
+
+        @Override
+        public Exchange send(String url, Map<String, String> headers, String body) throws IOException {
+            throw new IOException("not connected");
+        }
+
+        @Override
+        public void closeIdleConnections() {
+        }
+
+        @Override
+        public void shutdown() {
+            shutdowns++;
+        }
+    }
+}
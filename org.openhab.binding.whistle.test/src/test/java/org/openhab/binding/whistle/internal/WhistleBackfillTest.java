@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the requests and the CSV files of the backfill.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleBackfillTest {
+    private final HistoryAccount account = new HistoryAccount();
+    private final WhistleBackfill backfill = new WhistleBackfill(account, "Whistle backfill test");
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("whistle", "backfill");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        backfill.shutdown();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void dailyTotalsWithoutDayNumbersAreWrittenOldestFirst() throws Exception {
+        backfill.configure(40, 31, 0, directory);
+        backfill.request("100000", "dogs/100000/stats/daily_totals", false);
+        List<String> lines = await(new File(directory, "100000.daily_totals.csv"), 41);
+        int yesterday = WhistleDailyStore.today() - 1;
+        for (int i = 1; i <= 40; i++) {
+            int day = yesterday - 40 + i;
+            assertEquals(WhistleDailyStore.formatDate(day) + "," + day + "," + active(day) + ",0,0",
+                    lines.get(i));
+        }
+        // Two pages of days from a start date
+        assertEquals(2, account.queries.size());
+        assertTrue(account.queries.get(0).contains("start_time=" + WhistleDailyStore.formatDate(yesterday - 39)));
+    }
+
+    @Test
+    public void dailiesAreRequestedByCount() throws Exception {
+        backfill.configure(40, 31, 0, directory);
+        backfill.request("100000", "dogs/100000/dailies", true);
+        List<String> lines = await(new File(directory, "100000.dailies.csv"), 41);
+        int yesterday = WhistleDailyStore.today() - 1;
+        assertEquals(WhistleDailyStore.formatDate(yesterday - 39) + "," + (yesterday - 39) + ","
+                + active(yesterday - 39) + ",0,0", lines.get(1));
+        assertEquals(Collections.singletonList("dogs/100000/dailies?count=41"), account.queries);
+    }
+
+    // The lines of the file once it has the given number of them
+    private static List<String> await(File file, int count) throws Exception {
+        List<String> lines = Collections.emptyList();
+        for (int i = 0; i < 100 && lines.size() < count; i++) {
+            Thread.sleep(50);
+            lines = readLines(file);
+        }
+        assertEquals(count, lines.size());
+        return lines;
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        if (!file.isFile()) {
+            return lines;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static int active(int day) {
+        return day % 120;
+    }
+
+    // Lists the requested days without day numbers, oldest first
+    private static class HistoryAccount extends WhistleAccount {
+        private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+        HistoryAccount() {
+            super(WhistleAccount.DEFAULT, new WhistleMetrics());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        <T> T getUncachedData(String APIURL, WhistleHttpClient.ResponseHandler<T> parser) {
+            queries.add(APIURL);
+            int today = WhistleDailyStore.today();
+            int from;
+            int to;
+            int count = APIURL.indexOf("count=");
+            if (count >= 0) {
+                from = today - Integer.parseInt(APIURL.substring(count + "count=".length())) + 1;
+                to = today;
+            } else {
+                int start = APIURL.indexOf("start_time=") + "start_time=".length();
+                int end = APIURL.indexOf("end_time=") + "end_time=".length();
+                from = parseDay(APIURL.substring(start, start + 10));
+                to = parseDay(APIURL.substring(end, end + 10));
+            }
+            WhistleDailies dailies = new WhistleDailies();
+            for (int day = from; day <= to; day++) {
+                dailies.add(WhistleDailies.NO_DAY, active(day), 0, 0);
+            }
+            return (T) dailies;
+        }
+
+        private static int parseDay(String date) {
+            for (int day = WhistleDailyStore.today(); day > 0; day--) {
+                if (WhistleDailyStore.formatDate(day).equals(date)) {
+                    return day;
+                }
+            }
+            throw new IllegalArgumentException(date);
+        }
+    }
+}
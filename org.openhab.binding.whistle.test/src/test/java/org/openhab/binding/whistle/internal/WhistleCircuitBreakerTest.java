@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests opening, probing and closing the circuit.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleCircuitBreakerTest {
+    @Test
+    public void opensAfterThreshold() {
+        WhistleCircuitBreaker breaker = new WhistleCircuitBreaker();
+        breaker.configure(2, 60000L, 60000L);
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertFalse(breaker.isClosed());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void letsOneProbeThroughAndClosesOnSuccess() {
+        WhistleCircuitBreaker breaker = new WhistleCircuitBreaker();
+        // Without a backoff the circuit can be probed right away
+        breaker.configure(1, 0L, 0L);
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertTrue(breaker.isClosed());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledProbeIsLetThroughAgain() {
+        WhistleCircuitBreaker breaker = new WhistleCircuitBreaker();
+        breaker.configure(1, 0L, 0L);
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+        // E.g. no token could be had, so nothing was sent
+        breaker.cancelRequest();
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.openhab.core.library.types.DecimalType;
+
+/**
+ * Tests the sync cursor, the merging of daily records and the values derived from them.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleDailyStoreTest {
+    private static final int TODAY = 17000;
+
+    @Test
+    public void firstSyncStartsAtRequiredHistory() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.requireDays(8);
+        assertEquals(TODAY - 7, store.getSyncStartDay(TODAY));
+    }
+
+    @Test
+    public void laterSyncsStartAtLastSyncedDay() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.requireDays(8);
+        store.merge(dailies(TODAY - 7, TODAY), TODAY - 7, TODAY);
+        assertEquals(TODAY, store.getSyncStartDay(TODAY));
+        // The day synced last may have been incomplete
+        assertEquals(TODAY, store.getSyncStartDay(TODAY + 2));
+    }
+
+    @Test
+    public void shortHistoryIsNotFetchedAgain() {
+        // A dog with 10 days of records, and items needing 91 days
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.requireDays(91);
+        assertEquals(TODAY - 90, store.getSyncStartDay(TODAY));
+        store.merge(dailies(TODAY - 9, TODAY), TODAY - 90, TODAY);
+        assertEquals(TODAY, store.getSyncStartDay(TODAY));
+        store.merge(dailies(TODAY, TODAY + 1), TODAY, TODAY + 1);
+        assertEquals(TODAY + 1, store.getSyncStartDay(TODAY + 1));
+    }
+
+    @Test
+    public void moreRequiredDaysFetchTheMissingHistory() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.requireDays(8);
+        store.merge(dailies(TODAY - 7, TODAY), TODAY - 7, TODAY);
+        store.requireDays(31);
+        assertEquals(TODAY - 30, store.getSyncStartDay(TODAY));
+        store.merge(dailies(TODAY - 30, TODAY), TODAY - 30, TODAY);
+        assertEquals(TODAY, store.getSyncStartDay(TODAY));
+        assertTrue(store.isSyncedFrom(TODAY - 30));
+        assertFalse(store.isSyncedFrom(TODAY - 31));
+    }
+
+    @Test
+    public void recordsWithoutDayNumberCountFromStartDay() {
+        // Oldest first, as listed from a start date
+        WhistleDailies dailies = new WhistleDailies();
+        dailies.add(WhistleDailies.NO_DAY, 10, 100, 60);
+        dailies.add(WhistleDailies.NO_DAY, 20, 200, 60);
+        dailies.add(WhistleDailies.NO_DAY, 30, 300, 60);
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies, TODAY - 2, TODAY);
+        assertEquals(10, store.getMinutesActive(TODAY - 2));
+        assertEquals(100, store.getMinutesRest(TODAY - 2));
+        assertEquals(20, store.getMinutesActive(TODAY - 1));
+        assertEquals(30, store.getMinutesActive(TODAY));
+    }
+
+    @Test
+    public void recordsWithoutDayNumberPastTodayAreDropped() {
+        WhistleDailies dailies = new WhistleDailies();
+        dailies.add(WhistleDailies.NO_DAY, 10, 100, 60);
+        dailies.add(WhistleDailies.NO_DAY, 20, 200, 60);
+        dailies.add(WhistleDailies.NO_DAY, 30, 300, 60);
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies, TODAY - 1, TODAY);
+        assertEquals(10, store.getMinutesActive(TODAY - 1));
+        assertEquals(20, store.getMinutesActive(TODAY));
+        assertFalse(store.has(TODAY + 1));
+        assertEquals(2, store.countDays(TODAY - 10, TODAY + 10));
+    }
+
+    @Test
+    public void dailyTotalsAreStoredInResponseOrder() throws IOException {
+        // As read for averages before the store: oldest first, today last, and without day numbers
+        String json = "[{\"date\":\"2016-07-18\",\"minutes_active\":40,\"minutes_rest\":700},"
+                + "{\"date\":\"2016-07-19\",\"minutes_active\":50,\"minutes_rest\":800},"
+                + "{\"date\":\"2016-07-20\",\"minutes_active\":5,\"minutes_rest\":90}]";
+        WhistleDailies dailies = WhistleJsonParser.DAILY_TOTALS
+                .handle(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies, TODAY - 2, TODAY);
+        assertEquals(40, store.getMinutesActive(TODAY - 2));
+        assertEquals(800, store.getMinutesRest(TODAY - 1));
+        assertEquals(5, store.getMinutesActive(TODAY));
+        // The average of the 2 days before today
+        assertEquals(90, store.sumMinutesActive(TODAY - 2, TODAY - 1));
+    }
+
+    @Test
+    public void mergeReplacesDaysSyncedAgain() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies(TODAY - 2, TODAY), TODAY - 2, TODAY);
+        WhistleDailies update = new WhistleDailies();
+        update.add(TODAY, 500, 0, 60);
+        store.merge(update, TODAY, TODAY);
+        assertEquals(500, store.getMinutesActive(TODAY));
+        assertEquals(active(TODAY - 1) + active(TODAY - 2) + 500, store.sumMinutesActive(TODAY - 2, TODAY));
+    }
+
+    @Test
+    public void mergeOfEarlierDaysShiftsTheStore() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies(TODAY - 2, TODAY), TODAY - 2, TODAY);
+        // Earlier history, e.g. after more days are required, moves the records up
+        store.merge(dailies(TODAY - 40, TODAY - 30), TODAY - 40, TODAY);
+        assertEquals(active(TODAY), store.getMinutesActive(TODAY));
+        assertEquals(active(TODAY - 40), store.getMinutesActive(TODAY - 40));
+        assertFalse(store.has(TODAY - 10));
+        assertEquals(11, store.countDays(TODAY - 40, TODAY - 3));
+        assertEquals(14, store.countDays(TODAY - 100, TODAY + 100));
+        long sum = 0;
+        for (int day = TODAY - 40; day <= TODAY - 30; day++) {
+            sum += active(day);
+        }
+        assertEquals(sum, store.sumMinutesActive(TODAY - 45, TODAY - 3));
+    }
+
+    @Test
+    public void mergeOfOldestFirstRecordsSpansAllDays() {
+        WhistleDailies dailies = new WhistleDailies();
+        for (int day = TODAY - 4; day <= TODAY; day++) {
+            dailies.add(day, active(day), 0, 60);
+        }
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies, TODAY - 4, TODAY);
+        assertEquals(5, store.countDays(TODAY - 4, TODAY));
+        assertEquals(active(TODAY - 4), store.getMinutesActive(TODAY - 4));
+        assertEquals(active(TODAY), store.getMinutesActive(TODAY));
+    }
+
+    @Test
+    public void mergeOfLaterDaysLeavesGap() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies(TODAY - 2, TODAY), TODAY - 2, TODAY);
+        store.merge(dailies(TODAY + 5, TODAY + 5), TODAY + 5, TODAY + 5);
+        assertFalse(store.has(TODAY + 3));
+        assertEquals(0, store.getMinutesActive(TODAY + 3));
+        assertEquals(4, store.countDays(TODAY - 2, TODAY + 5));
+        assertEquals(active(TODAY) + active(TODAY + 5), store.sumMinutesActive(TODAY, TODAY + 10));
+    }
+
+    @Test
+    public void shiftKeepsWindowsCounted() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        WhistleDailies dailies = new WhistleDailies();
+        dailies.add(TODAY - 1, 30, 0, 20);
+        dailies.add(TODAY - 2, 10, 0, 20);
+        store.merge(dailies, TODAY - 2, TODAY);
+        assertEquals(30, store.getActivePercentile(3, TODAY, 100));
+        assertEquals(50, store.getGoalRate(3, TODAY));
+        // Earlier history moves the records up, and replaces a day within the window
+        dailies = new WhistleDailies();
+        dailies.add(TODAY - 2, 50, 0, 20);
+        dailies.add(TODAY - 3, 5, 0, 20);
+        dailies.add(TODAY - 10, 70, 0, 20);
+        store.merge(dailies, TODAY - 10, TODAY);
+        assertEquals(5, store.getActivePercentile(3, TODAY, 0));
+        assertEquals(50, store.getActivePercentile(3, TODAY, 100));
+        assertEquals(67, store.getGoalRate(3, TODAY));
+        assertEquals(70, store.getActivePercentile(30, TODAY, 100));
+    }
+
+    @Test
+    public void windowMovesWithToday() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies(TODAY - 10, TODAY), TODAY - 10, TODAY);
+        assertEquals(active(TODAY - 1), store.getActivePercentile(1, TODAY, 50));
+        assertEquals(active(TODAY), store.getActivePercentile(1, TODAY + 1, 50));
+        // Today's record is not part of the window
+        assertEquals(-1, store.getActivePercentile(1, TODAY + 2, 50));
+        assertEquals(active(TODAY - 10), store.getActivePercentile(1, TODAY - 9, 50));
+    }
+
+    @Test
+    public void trendNeedsTwiceTheDaysBeforeToday() {
+        int today = WhistleDailyStore.today();
+        WhistleItemPlan plan = WhistleItemPlan.compile("Trend", "100000", WhistleAccount.DEFAULT, "trend", "7",
+                "device0", 0, 0.0, false, 0);
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.requireDays(plan.historyDays);
+        assertEquals(today - 14, store.getSyncStartDay(today));
+        WhistleDailies dailies = new WhistleDailies();
+        for (int day = today; day >= today - 14; day--) {
+            // 60 minutes a day in the week before last, 90 in the last week, and nothing counted today
+            dailies.add(day, day == today ? 1000 : day >= today - 7 ? 90 : 60, 0, 60);
+        }
+        store.merge(dailies, today - 14, today);
+        assertEquals(50.0, ((DecimalType) plan.extract(store)).doubleValue(), 0.0);
+    }
+
+    @Test
+    public void trendWithoutEarlierWeekHasNoValue() {
+        int today = WhistleDailyStore.today();
+        WhistleItemPlan plan = WhistleItemPlan.compile("Trend", "100000", WhistleAccount.DEFAULT, "trend", "7",
+                "device0", 0, 0.0, false, 0);
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(dailies(today - 7, today), today - 7, today);
+        assertNull(plan.extract(store));
+    }
+
+    @Test
+    public void formatsKnownDates() {
+        assertEquals("1970-01-01", WhistleDailyStore.formatDate(0));
+        assertEquals("1969-12-31", WhistleDailyStore.formatDate(-1));
+        assertEquals("2000-02-29", WhistleDailyStore.formatDate(11016));
+        assertEquals("2000-03-01", WhistleDailyStore.formatDate(11017));
+        assertEquals("2016-05-01", WhistleDailyStore.formatDate(16922));
+        assertEquals("1900-03-01", WhistleDailyStore.formatDate(-25508));
+    }
+
+    @Test
+    public void formatsDatesLikeDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int day = -1000; day <= 80000; day += 7) {
+            assertEquals(format.format(new Date(day * 86400000L)), WhistleDailyStore.formatDate(day));
+        }
+    }
+
+    @Test
+    public void emptyStoreHasNoDays() {
+        WhistleDailyStore store = new WhistleDailyStore();
+        store.merge(new WhistleDailies(), TODAY - 2, TODAY);
+        assertFalse(store.has(TODAY));
+        assertEquals(0, store.countDays(TODAY - 2, TODAY));
+        assertEquals(0, store.sumMinutesActive(TODAY - 2, TODAY));
+        assertEquals(TODAY, store.getSyncStartDay(TODAY));
+    }
+
+    // Records for the days from fromDay through toDay, newest first
+    static WhistleDailies dailies(int fromDay, int toDay) {
+        WhistleDailies dailies = new WhistleDailies();
+        for (int day = toDay; day >= fromDay; day--) {
+            dailies.add(day, active(day), 600 - active(day), 60);
+        }
+        return dailies;
+    }
+
+    static int active(int day) {
+        return day * 7 % 120;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the percentiles and goal hit-rates of rolling windows, on their own
+ * and as the daily store moves them over changing records.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleDailyWindowTest {
+    @Test
+    public void emptyWindowHasNoValues() {
+        WhistleDailyWindow window = new WhistleDailyWindow(7);
+        assertEquals(-1, window.getPercentile(50));
+        assertEquals(-1, window.getGoalRate());
+    }
+
+    @Test
+    public void percentilesAreNearestRank() {
+        WhistleDailyWindow window = new WhistleDailyWindow(7);
+        for (int minutes : new int[] { 40, 10, 30, 20 }) {
+            window.add(minutes, 0, 1);
+        }
+        assertEquals(10, window.getPercentile(0));
+        assertEquals(20, window.getPercentile(50));
+        assertEquals(30, window.getPercentile(51));
+        assertEquals(40, window.getPercentile(90));
+        assertEquals(40, window.getPercentile(100));
+        window.add(10, 0, -1);
+        assertEquals(20, window.getPercentile(0));
+        assertEquals(3, window.getCount());
+    }
+
+    @Test
+    public void minutesAreCountedWithinADay() {
+        WhistleDailyWindow window = new WhistleDailyWindow(7);
+        window.add(-5, 0, 1);
+        window.add(2000, 0, 1);
+        assertEquals(0, window.getPercentile(0));
+        assertEquals(WhistleDailyWindow.MAX_MINUTES, window.getPercentile(100));
+    }
+
+    @Test
+    public void goalRateIsRounded() {
+        WhistleDailyWindow window = new WhistleDailyWindow(7);
+        window.add(60, 60, 1);
+        window.add(59, 60, 1);
+        // Without a goal, the goal isn't met
+        window.add(100, 0, 1);
+        assertEquals(33, window.getGoalRate());
+        window.add(90, 60, 1);
+        assertEquals(50, window.getGoalRate());
+        window.add(80, 60, 1);
+        assertEquals(60, window.getGoalRate());
+        window.clear();
+        assertEquals(-1, window.getGoalRate());
+    }
+
+    @Test
+    public void storeWindowsMatchRecountedDays() {
+        // The records as merged, to recount each window from
+        int[] active = new int[20000];
+        int[] goal = new int[20000];
+        boolean[] stored = new boolean[20000];
+        int[] windowDays = { 1, 3, 7, 30, 90 };
+        int[] percents = { 0, 37, 50, 90, 100 };
+        Random random = new Random(1);
+        WhistleDailyStore store = new WhistleDailyStore();
+        int today = 1000;
+        for (int step = 0; step < 5000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 3) {
+                // A sync of the last days, or of earlier history, with some days missing
+                int start = random.nextInt(4) == 0 ? today - random.nextInt(200) : today - random.nextInt(3);
+                WhistleDailies dailies = new WhistleDailies();
+                for (int day = today; day >= start; day--) {
+                    if (random.nextInt(6) > 0) {
+                        active[day] = random.nextInt(1600);
+                        goal[day] = random.nextInt(3) == 0 ? 0 : random.nextInt(300);
+                        stored[day] = true;
+                        dailies.add(day, active[day], 0, goal[day]);
+                    }
+                }
+                store.merge(dailies, start, today);
+            } else if (operation < 5) {
+                // Mostly the same or the next day, sometimes a jump past every window
+                today += random.nextInt(100) == 0 ? 50 + random.nextInt(100) : random.nextInt(3) == 0 ? 1 : 0;
+            } else {
+                int days = windowDays[random.nextInt(windowDays.length)];
+                int percent = percents[random.nextInt(percents.length)];
+                String window = "window of " + days + " days before day " + today;
+                assertEquals(window, percentile(active, stored, today - days, today - 1, percent),
+                        store.getActivePercentile(days, today, percent));
+                assertEquals(window, goalRate(active, goal, stored, today - days, today - 1),
+                        store.getGoalRate(days, today));
+            }
+        }
+    }
+
+    private static int percentile(int[] active, boolean[] stored, int fromDay, int toDay, int percent) {
+        List<Integer> minutes = new ArrayList<Integer>();
+        for (int day = fromDay; day <= toDay; day++) {
+            if (stored[day]) {
+                minutes.add(Math.min(active[day], WhistleDailyWindow.MAX_MINUTES));
+            }
+        }
+        if (minutes.isEmpty()) {
+            return -1;
+        }
+        Collections.sort(minutes);
+        int rank = Math.max(1, (int) Math.ceil(percent * minutes.size() / 100.0));
+        return minutes.get(rank - 1);
+    }
+
+    private static int goalRate(int[] active, int[] goal, boolean[] stored, int fromDay, int toDay) {
+        int count = 0;
+        int hits = 0;
+        for (int day = fromDay; day <= toDay; day++) {
+            if (stored[day]) {
+                count++;
+                if (goal[day] > 0 && active[day] >= goal[day]) {
+                    hits++;
+                }
+            }
+        }
+        return count == 0 ? -1 : Math.round(hits * 100f / count);
+    }
+}
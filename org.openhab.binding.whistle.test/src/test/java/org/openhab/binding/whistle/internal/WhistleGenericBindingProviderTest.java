@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.model.item.binding.BindingConfigParseException;
+
+/**
+ * Tests parsing binding configurations and keeping devices across reloads.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleGenericBindingProviderTest {
+    private final WhistleGenericBindingProvider provider = new WhistleGenericBindingProvider();
+
+    @Test
+    public void parsesBindingConfiguration() throws BindingConfigParseException {
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Battery"),
+                "100000@family:device:battery:600:deadband=5%:republish=3600");
+        assertEquals("100000", provider.getDogID("Battery"));
+        assertEquals("family", provider.getAccount("Battery"));
+        assertEquals("device", provider.getCommand("Battery"));
+        assertEquals("battery", provider.getParameter("Battery"));
+        assertEquals(600000L, provider.getRefreshInterval("Battery"));
+        assertEquals(5.0, provider.getDeadband("Battery"), 0.0);
+        assertTrue(provider.isDeadbandPercent("Battery"));
+        assertEquals(3600000L, provider.getRepublishInterval("Battery"));
+        assertTrue(provider.isPending("Battery"));
+    }
+
+    @Test(expected = BindingConfigParseException.class)
+    public void rejectsUnknownCommand() throws BindingConfigParseException {
+        provider.validateItemType(new NumberItem("Unknown"), "100000:weather:today");
+    }
+
+    @Test(expected = BindingConfigParseException.class)
+    public void rejectsInvalidDays() throws BindingConfigParseException {
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Average"), "100000:averageactive:0");
+    }
+
+    @Test
+    public void dogItemIsActiveWithoutDevice() throws BindingConfigParseException {
+        provider.processBindingConfiguration("dogs.items", new StringItem("Name"), "100000:dog:name");
+        assertFalse(provider.isPending("Name"));
+        assertEquals("dogs.json", WhistleItemPlan.compile(provider, "Name").resource);
+    }
+
+    @Test
+    public void reloadKeepsDeviceOfSameDog() throws BindingConfigParseException {
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Battery"), "100000:device:battery");
+        provider.setDeviceID("Battery", "device0");
+        provider.removeConfigurations("dogs.items");
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Battery"), "100000:device:battery");
+        assertFalse(provider.isPending("Battery"));
+        assertEquals("device0", provider.getDeviceID("Battery"));
+    }
+
+    @Test
+    public void reloadResolvesOtherDogAgain() throws BindingConfigParseException {
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Battery"), "100000:device:battery");
+        provider.setDeviceID("Battery", "device0");
+        provider.removeConfigurations("dogs.items");
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Battery"), "200000:device:battery");
+        assertTrue(provider.isPending("Battery"));
+    }
+
+    @Test
+    public void reloadAsDeviceItemResolvesDevice() throws BindingConfigParseException {
+        provider.processBindingConfiguration("dogs.items", new StringItem("Name"), "100000:dog:name");
+        provider.removeConfigurations("dogs.items");
+        provider.processBindingConfiguration("dogs.items", new StringItem("Name"), "100000:device:firmware");
+        assertTrue(provider.isPending("Name"));
+    }
+
+    @Test
+    public void deletedItemIsForgottenAfterReload() throws BindingConfigParseException {
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Battery"), "100000:device:battery");
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Goal"), "100000:goals:current");
+        provider.setDeviceID("Battery", "device0");
+        provider.setDeviceID("Goal", "device0");
+        // Goal is deleted from the file
+        provider.removeConfigurations("dogs.items");
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Battery"), "100000:device:battery");
+        provider.processBindingConfiguration("other.items", new NumberItem("Other"), "300000:device:battery");
+        // Added back later, it is bound anew
+        provider.processBindingConfiguration("dogs.items", new NumberItem("Goal"), "100000:goals:current");
+        assertTrue(provider.isPending("Goal"));
+        assertNull(provider.getDeviceID("Goal"));
+    }
+}
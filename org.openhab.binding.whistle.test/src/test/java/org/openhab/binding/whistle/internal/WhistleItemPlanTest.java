@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests compiling binding configurations into plans.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleItemPlanTest {
+    @Test
+    public void compilesCommandFieldAndDays() {
+        WhistleItemPlan plan = compile("averageactive", "7", null);
+        assertEquals(WhistleCommand.AVERAGE_ACTIVE, plan.command);
+        assertEquals(WhistleField.AVERAGE_ACTIVE, plan.field);
+        assertEquals(7, plan.days);
+        assertEquals(8, plan.historyDays);
+        assertEquals("100000@:averageactive:7", plan.bindingKey);
+    }
+
+    @Test
+    public void trendNeedsTwiceTheDays() {
+        WhistleItemPlan plan = compile("trend", "7", null);
+        assertEquals(15, plan.historyDays);
+    }
+
+    @Test
+    public void commandsWithoutDailiesNeedNoHistory() {
+        assertEquals(0, compile("goals", "current", null).historyDays);
+        assertEquals(0, compile("device", "battery", null).days);
+    }
+
+    @Test
+    public void pendingPlanHasNoResource() {
+        WhistleItemPlan plan = compile("device", "battery", null);
+        assertNull(plan.resource);
+        plan = plan.withDevice("device0");
+        assertEquals("devices/device0.json", plan.resource);
+        assertEquals("device0", plan.deviceID);
+        assertNull(plan.withDevice(null).resource);
+    }
+
+    @Test
+    public void dogPlanReadsDogsWithoutDevice() {
+        assertEquals("dogs.json", compile("dog", "name", null).resource);
+    }
+
+    @Test
+    public void dailyPlanReadsDogDailies() {
+        assertEquals("dogs/100000/dailies", compile("activity", "0", "device0").resource);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownField() {
+        compile("device", "colour", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAggregateOverNoDays() {
+        compile("medianactive", "0", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDaysThatAreNoNumber() {
+        compile("activity", "week", null);
+    }
+
+    private static WhistleItemPlan compile(String command, String parameter, String deviceID) {
+        return WhistleItemPlan.compile("Item", "100000", WhistleAccount.DEFAULT, command, parameter, deviceID, 0,
+                0.0, false, 0);
+    }
+}
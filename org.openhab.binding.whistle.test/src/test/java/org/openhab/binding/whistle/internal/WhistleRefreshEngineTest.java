@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests running the fetches of a cycle and cancelling them at its deadline.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleRefreshEngineTest {
+    private final WhistleRefreshEngine engine = new WhistleRefreshEngine("Whistle refresh test");
+
+    @After
+    public void shutdown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void completedTasksAreNotCancelled() {
+        engine.configure(2, 10000L);
+        WhistleRefreshEngine.Batch batch = engine.submitAll(Arrays.asList(task(0), task(0), task(0)));
+        assertEquals(3, engine.await(batch));
+        assertTrue(batch.getCancelled().isEmpty());
+    }
+
+    @Test
+    public void tasksPastDeadlineAreCancelled() {
+        engine.configure(1, 200L);
+        Callable<Void> fast = task(0);
+        Callable<Void> slow = task(10000L);
+        Callable<Void> queued = task(0);
+        WhistleRefreshEngine.Batch batch = engine.submitAll(Arrays.asList(fast, slow, queued));
+        assertEquals(1, engine.await(batch));
+        assertEquals(Arrays.asList(slow, queued), batch.getCancelled());
+    }
+
+    @Test
+    public void failedTasksAreNotCancelled() {
+        engine.configure(1, 10000L);
+        Callable<Void> failing = new Callable<Void>() {
+            @Override
+            public Void call() {
+                throw new IllegalStateException("no data");
+            }
+        };
+        List<Callable<Void>> tasks = Arrays.asList(failing, task(0));
+        WhistleRefreshEngine.Batch batch = engine.submitAll(tasks);
+        assertEquals(1, engine.await(batch));
+        assertTrue(batch.getCancelled().isEmpty());
+    }
+
+    private static Callable<Void> task(final long millis) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                Thread.sleep(millis);
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests how often the roster is requested while items are resolved.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public class WhistleRosterTest {
+    private final RosterAccount account = new RosterAccount();
+    private final WhistleRoster roster = new WhistleRoster(account);
+
+    @After
+    public void shutdown() {
+        account.shutdown();
+    }
+
+    @Test
+    public void loadedRosterAnswersAllLookups() throws Exception {
+        account.dogs = Collections.singletonList(dog("100000", "device0"));
+        assertEquals("device0", roster.getDog("100000").deviceID);
+        assertEquals("device0", roster.getDog("100000").deviceID);
+        assertNull(roster.getDog("200000"));
+        assertEquals(1, account.requests);
+    }
+
+    @Test
+    public void failedReloadIsNotRepeatedForEachItem() throws Exception {
+        // e.g. a 404 or a response that can't be parsed, while the circuit stays closed
+        account.dogs = null;
+        for (int i = 0; i < 5; i++) {
+            assertNull(roster.getDog("10000" + i));
+        }
+        assertEquals(1, account.requests);
+    }
+
+    @Test
+    public void throwingReloadIsNotRepeatedForEachItem() throws Exception {
+        account.failure = new IllegalStateException("connection reset");
+        try {
+            roster.getDog("100000");
+        } catch (IllegalStateException e) {
+            // As thrown by the request
+        }
+        account.failure = null;
+        account.dogs = Collections.singletonList(dog("100000", "device0"));
+        assertNull(roster.getDog("100000"));
+        assertNull(roster.getDog("200000"));
+        assertEquals(1, account.requests);
+    }
+
+    @Test
+    public void invalidatedRosterIsReloadedAfterFailure() throws Exception {
+        account.dogs = null;
+        assertNull(roster.getDog("100000"));
+        account.dogs = Collections.singletonList(dog("100000", "device0"));
+        roster.invalidate();
+        assertEquals("device0", roster.getDog("100000").deviceID);
+        assertEquals(2, account.requests);
+    }
+
+    private static WhistleRoster.Dog dog(String id, String deviceID) {
+        return new WhistleRoster.Dog(id, deviceID, "Dog " + id, null, null, null, null);
+    }
+
+    // Answers the roster's requests without a server
+    private static class RosterAccount extends WhistleAccount {
+        private List<WhistleRoster.Dog> dogs;
+        private RuntimeException failure;
+        private int requests;
+
+        RosterAccount() {
+            super(WhistleAccount.DEFAULT, new WhistleMetrics());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        <T> T getData(String APIURL, WhistleHttpClient.ResponseHandler<T> parser) {
+            requests++;
+            if (failure != null) {
+                throw failure;
+            }
+            return (T) dogs;
+        }
+    }
+}
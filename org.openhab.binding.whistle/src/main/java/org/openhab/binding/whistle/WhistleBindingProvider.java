@@ -24,9 +24,51 @@ import org.openhab.core.binding.BindingProvider;
 public interface WhistleBindingProvider extends BindingProvider {
     public String getDogID(String itemName);
 
+    /**
+     * Returns the name of the account the item's dog is read through, or an
+     * empty string for the default account.
+     */
+    public String getAccount(String itemName);
+
     public String getDeviceID(String itemName);
 
     public String getCommand(String itemName);
 
     public String getParameter(String itemName);
+
+    /**
+     * Returns the refresh interval of the item in milliseconds, or 0 if the
+     * binding's default for the command applies.
+     */
+    public long getRefreshInterval(String itemName);
+
+    /**
+     * Returns the smallest change of the item's value that is published, or 0
+     * to publish every change.
+     */
+    public double getDeadband(String itemName);
+
+    /**
+     * Returns true if the item's deadband is a percentage of its last
+     * published value.
+     */
+    public boolean isDeadbandPercent(String itemName);
+
+    /**
+     * Returns how long after its last update the item's value is published
+     * even though it hasn't changed, in milliseconds, or 0 if the binding's
+     * default applies.
+     */
+    public long getRepublishInterval(String itemName);
+
+    /**
+     * Returns true while the dog of the item has not been found yet. Pending
+     * items are not refreshed.
+     */
+    public boolean isPending(String itemName);
+
+    /**
+     * Activates a pending item with the device of its dog.
+     */
+    public void setDeviceID(String itemName, String deviceID);
 }
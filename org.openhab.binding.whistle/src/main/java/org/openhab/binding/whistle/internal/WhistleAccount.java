@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Whistle account and everything its requests go through: its own token,
+ * connection pool, rate limit, circuit breaker, roster of dogs and refresh
+ * threads. Accounts don't share any of these, so a slow or failing account
+ * doesn't hold up the others.
+ * <p>
+ * The default account is configured by the plain keys of the binding
+ * configuration, e.g. <code>whistle:username</code>; a named account by the
+ * keys prefixed with its name, e.g. <code>whistle:home.username</code>, which
+ * fall back to the plain keys except for the credentials.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleAccount {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleAccount.class);
+
+    static final String DEFAULT = "";
+    // URL for Whistle API, unless configured otherwise
+    static final String DEFAULT_API_ROOT = "https://app.whistle.com/api/";
+    // Keys an account can be configured with
+    static final String[] SETTINGS = { "username", "password", "apiroot", "connecttimeout", "readtimeout",
+            "maxconnections", "compression", "concurrency", "cycletimeout", "ratelimit", "failurethreshold",
+            "backoff", "maxbackoff", "rosterttl", "backfill", "backfillpage", "backfilldelay", "ttl", "ttl.devices",
+            "ttl.dailies", "ttl.goals", "ttl.daily_totals", "ttl.dogs", "stagger", "jitter" };
+
+    private final String name;
+    private final WhistleHttpClient httpClient;
+    private final WhistleTokenManager tokenManager;
+    private final WhistleRateLimiter rateLimiter = new WhistleRateLimiter();
+    private final WhistleCircuitBreaker circuitBreaker = new WhistleCircuitBreaker();
+    private final WhistleRoster roster = new WhistleRoster(this);
+    private final WhistleRefreshEngine refreshEngine;
+    private final WhistleBackfill backfill;
+    // Last response of each resource
+    private final WhistleResponseCache responseCache = new WhistleResponseCache();
+    // Next due time of each resource
+    private final WhistleScheduler scheduler = new WhistleScheduler();
+    // Local copies of the daily records, by resource
+    private final ConcurrentMap<String, WhistleDailyStore> dailyStores =
+            new ConcurrentHashMap<String, WhistleDailyStore>();
+    // Base URL of all requests, e.g. a local simulator instead of the Whistle API
+    private volatile String apiRoot = DEFAULT_API_ROOT;
+    // Settings and data directory last applied, or null before the account is configured
+    private Map<String, String> settings;
+    private File dataDir;
+
+    WhistleAccount(String name, WhistleMetrics metrics) {
+        this.name = name;
+        this.httpClient = new WhistleHttpClient(metrics);
+        this.tokenManager = new WhistleTokenManager(httpClient);
+        this.refreshEngine = new WhistleRefreshEngine(DEFAULT.equals(name) ? "Whistle refresh"
+                : "Whistle refresh " + name);
+        this.backfill = new WhistleBackfill(this, DEFAULT.equals(name) ? "Whistle backfill"
+                : "Whistle backfill " + name);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Applies the settings, by the keys in {@link #SETTINGS}. The token and
+     * the backfilled history are kept in the data directory. Unchanged
+     * settings are not applied again.
+     * <p>
+     * Returns true if the account has been configured before and now logs in
+     * as someone else or to another server. Its token, roster and cached
+     * responses are then discarded, and the devices of its dogs must be
+     * looked up again.
+     */
+    synchronized boolean configure(Map<String, String> settings, File dataDir) {
+        if (settings.equals(this.settings) && dataDir.equals(this.dataDir)) {
+            return false;
+        }
+        String newApiRoot = DEFAULT_API_ROOT;
+        String apiRootString = settings.get("apiroot");
+        if (StringUtils.isNotBlank(apiRootString)) {
+            apiRootString = apiRootString.trim();
+            newApiRoot = apiRootString.endsWith("/") ? apiRootString : apiRootString + "/";
+        }
+        Map<String, String> previous = this.settings;
+        boolean changed = previous != null && (!newApiRoot.equals(apiRoot)
+                || !StringUtils.equals(settings.get("username"), previous.get("username"))
+                || !StringUtils.equals(settings.get("password"), previous.get("password")));
+        if (!newApiRoot.equals(apiRoot)) {
+            logger.info("Using Whistle API at '{}' for account '{}'", newApiRoot, this);
+            apiRoot = newApiRoot;
+        }
+        if (changed) {
+            logger.info("Credentials or API of account '{}' changed, discarding its cached data", this);
+            // The dogs and responses of another login or server
+            roster.clear();
+            responseCache.clear();
+            scheduler.clear();
+            dailyStores.clear();
+            httpClient.clearValidators();
+        }
+        String username = settings.get("username");
+        String password = settings.get("password");
+        tokenManager.configure(apiRoot + "tokens.json", StringUtils.isNotBlank(username) ? username : null,
+                StringUtils.isNotBlank(password) ? password : null,
+                new File(dataDir, DEFAULT.equals(name) ? "token" : "token." + name));
+        httpClient.configure(getInt(settings, "connecttimeout", WhistleHttpClient.DEFAULT_CONNECT_TIMEOUT),
+                getInt(settings, "readtimeout", WhistleHttpClient.DEFAULT_READ_TIMEOUT),
+                getInt(settings, "maxconnections", WhistleHttpClient.DEFAULT_MAX_CONNECTIONS),
+                !"false".equalsIgnoreCase(settings.get("compression")));
+        refreshEngine.configure(getInt(settings, "concurrency", WhistleRefreshEngine.DEFAULT_CONCURRENCY),
+                getLong(settings, "cycletimeout", WhistleRefreshEngine.DEFAULT_DEADLINE));
+        String rateLimitString = settings.get("ratelimit");
+        rateLimiter.configure(StringUtils.isNotBlank(rateLimitString) ? Double.parseDouble(rateLimitString.trim())
+                : WhistleRateLimiter.DEFAULT_RATE);
+        circuitBreaker.configure(getInt(settings, "failurethreshold", WhistleCircuitBreaker.DEFAULT_THRESHOLD),
+                getLong(settings, "backoff", WhistleCircuitBreaker.DEFAULT_BACKOFF),
+                getLong(settings, "maxbackoff", WhistleCircuitBreaker.DEFAULT_MAX_BACKOFF));
+        backfill.configure(getInt(settings, "backfill", 0),
+                getInt(settings, "backfillpage", WhistleBackfill.DEFAULT_PAGE_DAYS),
+                getLong(settings, "backfilldelay", WhistleBackfill.DEFAULT_DELAY),
+                DEFAULT.equals(name) ? new File(dataDir, "history") : new File(new File(dataDir, "history"), name));
+        scheduler.configure(!"false".equalsIgnoreCase(settings.get("stagger")), getLong(settings, "jitter", 0));
+        Map<String, Long> timesToLive = new HashMap<String, Long>();
+        for (String endpoint : WhistleMetrics.ENDPOINTS) {
+            String timeToLive = settings.get("ttl." + endpoint);
+            if (StringUtils.isNotBlank(timeToLive)) {
+                timesToLive.put(endpoint, Long.parseLong(timeToLive.trim()));
+            }
+        }
+        responseCache.configure(timesToLive, getLong(settings, "ttl", WhistleResponseCache.DEFAULT_TTL));
+        String rosterTTLString = settings.get("rosterttl");
+        if (StringUtils.isNotBlank(rosterTTLString)) {
+            roster.setTimeToLive(Long.parseLong(rosterTTLString.trim()));
+        }
+        // Only once all settings have been applied, so a failed configuration is applied again
+        this.settings = new HashMap<String, String>(settings);
+        this.dataDir = dataDir;
+        return changed;
+    }
+
+    /**
+     * Sends all requests of the account through the transport.
+     */
+    void setTransport(WhistleTransport transport) {
+        httpClient.setTransport(transport);
+        roster.invalidate();
+    }
+
+    boolean hasCredentials() {
+        return tokenManager.hasCredentials();
+    }
+
+    /**
+     * Returns the token, logging in if needed, or <code>null</code> if the
+     * login failed.
+     */
+    String getToken() {
+        return tokenManager.getToken();
+    }
+
+    /**
+     * Returns true unless requests are paused because the API is failing.
+     */
+    boolean isAvailable() {
+        return circuitBreaker.isClosed();
+    }
+
+    WhistleScheduler getScheduler() {
+        return scheduler;
+    }
+
+    WhistleRefreshEngine getRefreshEngine() {
+        return refreshEngine;
+    }
+
+    WhistleBackfill getBackfill() {
+        return backfill;
+    }
+
+    WhistleResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    WhistleDailyStore getDailyStore(String resource) {
+        WhistleDailyStore store = dailyStores.get(resource);
+        if (store == null) {
+            dailyStores.putIfAbsent(resource, new WhistleDailyStore());
+            store = dailyStores.get(resource);
+        }
+        return store;
+    }
+
+    /**
+     * Looks up the device of a dog in the cached roster. Returns
+     * <code>null</code> if the account doesn't see the dog.
+     */
+    String getDeviceID(String dogID) throws Exception {
+        logger.debug("Looking for DogId: '{}'", dogID);
+        WhistleRoster.Dog dog = roster.getDog(dogID);
+        return dog != null ? dog.deviceID : null;
+    }
+
+    /**
+     * Returns the device of a dog from the roster as last loaded, without a
+     * request, or <code>null</code> if it isn't known.
+     */
+    String getCachedDeviceID(String dogID) {
+        WhistleRoster.Dog dog = roster.getCachedDog(dogID);
+        return dog != null ? dog.deviceID : null;
+    }
+
+    // Generic function to get data from Whistle; returns null if the request failed
+    <T> T getData(String APIURL, WhistleHttpClient.ResponseHandler<T> parser) {
+        WhistleHttpClient.Response<T> response = getConditionalData(APIURL, parser);
+        return response != null ? response.value : null;
+    }
+
+    /**
+     * Gets data from Whistle with a conditional request. If the token is rejected, logs in again and retries
+     * once. Returns null if the request failed.
+     */
+    <T> WhistleHttpClient.Response<T> getConditionalData(String APIURL,
+            WhistleHttpClient.ResponseHandler<T> parser) {
+        return request(APIURL, parser, true);
+    }
+
+    /**
+     * Gets data from Whistle that is only requested once, without remembering its validators. Returns null if
+     * the request failed.
+     */
+    <T> T getUncachedData(String APIURL, WhistleHttpClient.ResponseHandler<T> parser) {
+        WhistleHttpClient.Response<T> response = request(APIURL, parser, false);
+        return response != null ? response.value : null;
+    }
+
+    private <T> WhistleHttpClient.Response<T> request(String APIURL, WhistleHttpClient.ResponseHandler<T> parser,
+            boolean conditional) {
+        // An open circuit neither spends rate budget nor logs in
+        if (!circuitBreaker.allowRequest()) {
+            logger.debug("Whistle API unavailable, not requesting '{}'", APIURL);
+            return null;
+        }
+        String token = rateLimiter.acquire() ? tokenManager.getToken() : null;
+        if (token == null) {
+            circuitBreaker.cancelRequest();
+            return null;
+        }
+        try {
+            WhistleHttpClient.Response<T> response;
+            try {
+                response = send(APIURL, token, parser, conditional);
+            } catch (WhistleHttpClient.UnauthorizedException e) {
+                tokenManager.invalidate(token);
+                token = tokenManager.getToken();
+                response = token != null ? send(APIURL, token, parser, conditional) : null;
+            }
+            circuitBreaker.recordSuccess();
+            return response;
+        } catch (WhistleHttpClient.StatusException e) {
+            // Only failures of the server count against the circuit; a wrong request is its own problem
+            if (e.isServerFailure()) {
+                circuitBreaker.recordFailure();
+            } else {
+                circuitBreaker.recordSuccess();
+            }
+            logger.warn("Failed to get '{}': {}", APIURL, e.getMessage());
+        } catch (Exception e) {
+            circuitBreaker.recordFailure();
+            logger.warn("Failed to get '{}': {}", APIURL, e.getMessage());
+        }
+        return null;
+    }
+
+    private <T> WhistleHttpClient.Response<T> send(String APIURL, String token,
+            WhistleHttpClient.ResponseHandler<T> parser, boolean conditional) throws IOException {
+        if (conditional) {
+            return httpClient.getConditional(apiRoot + APIURL, token, parser);
+        }
+        return new WhistleHttpClient.Response<T>(httpClient.get(apiRoot + APIURL, token, parser), true);
+    }
+
+    /**
+     * Stops the refresh and backfill threads and shuts down the connection
+     * pool. The account can't be used afterwards.
+     */
+    void shutdown() {
+        refreshEngine.shutdown();
+        backfill.shutdown();
+        httpClient.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return DEFAULT.equals(name) ? "default" : name;
+    }
+
+    private static int getInt(Map<String, String> settings, String key, int defaultValue) {
+        String value = settings.get(key);
+        return StringUtils.isNotBlank(value) ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static long getLong(Map<String, String> settings, String key, long defaultValue) {
+        String value = settings.get(key);
+        return StringUtils.isNotBlank(value) ? Long.parseLong(value.trim()) : defaultValue;
+    }
+}
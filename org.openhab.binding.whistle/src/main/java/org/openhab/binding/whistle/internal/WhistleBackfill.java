@@ -0,0 +1,333 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads the full history of a dog's daily records into CSV files, one
+ * per dog and endpoint, with the date of each record.
+ * <p>
+ * The history is requested in pages of a few weeks, oldest first, on a
+ * thread of its own and with a pause between pages, so the regular refresh
+ * keeps running. Only one page is held in memory at a time. The dailies
+ * endpoint only takes a number of days back from today, so its history comes
+ * in a single page. After each page,
+ * a cursor file records the next day and the length of the CSV file, so an
+ * interrupted backfill continues where it stopped, and the first day of the
+ * file. Once done, the backfill appends each day as it completes. If more days
+ * of history are configured later, the older days are downloaded into a new
+ * file, followed by the records already there.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleBackfill.class);
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final String HEADER = "date,day_number,minutes_active,minutes_rest,activity_goal\n";
+
+    static final int DEFAULT_PAGE_DAYS = 31;
+    static final long DEFAULT_DELAY = 1000L;
+
+    private final WhistleAccount account;
+    private final ExecutorService executor;
+    private final Set<String> queued = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Last day written, by resource, so complete resources aren't queued again
+    private final ConcurrentMap<String, Integer> completed = new ConcurrentHashMap<String, Integer>();
+    // Days of history to download; 0 disables the backfill
+    private volatile int days;
+    private volatile int pageDays = DEFAULT_PAGE_DAYS;
+    private volatile long delay = DEFAULT_DELAY;
+    private volatile File directory;
+
+    WhistleBackfill(WhistleAccount account, String threadName) {
+        this.account = account;
+        this.executor = Executors.newSingleThreadExecutor(new WhistleThreadFactory(threadName));
+    }
+
+    /**
+     * Sets the days of history to download, the days per request, the pause
+     * between requests in milliseconds and the directory of the CSV files.
+     */
+    void configure(int days, int pageDays, long delay, File directory) {
+        if (days != this.days || !directory.equals(this.directory)) {
+            completed.clear();
+        }
+        this.days = Math.max(0, days);
+        this.pageDays = Math.max(1, pageDays);
+        this.delay = Math.max(0, delay);
+        this.directory = directory;
+    }
+
+    /**
+     * Queues the backfill of the dog's resource, unless it is disabled,
+     * already queued or complete through yesterday.
+     */
+    void request(final String dogID, final String resource, final boolean dailies) {
+        Integer completedDay = completed.get(resource);
+        if (days <= 0 || (completedDay != null && completedDay >= WhistleDailyStore.today() - 1)
+                || !queued.add(resource)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        backfill(dogID, resource, dailies);
+                    } catch (IOException e) {
+                        logger.warn("Failed to backfill '{}': {}", resource, e.getMessage());
+                    } finally {
+                        queued.remove(resource);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(resource);
+        }
+    }
+
+    /**
+     * Stops the backfill; it continues from its cursor when requested again.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void backfill(String dogID, String resource, boolean dailies) throws IOException {
+        File directory = this.directory;
+        String name = dogID + (dailies ? ".dailies" : ".daily_totals");
+        File csvFile = new File(directory, name + ".csv");
+        File cursorFile = new File(directory, name + ".cursor");
+        // Only complete days; today is still changing
+        int lastDay = WhistleDailyStore.today() - 1;
+        int firstDay = lastDay - days + 1;
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long[] cursor = readCursor(cursorFile, csvFile);
+        if (cursor != null && firstDay < cursor[2]) {
+            cursor = extend(resource, dailies, csvFile, cursorFile, cursor, firstDay, dateFormat);
+            if (cursor == null) {
+                return;
+            }
+        }
+        int day = cursor != null ? (int) cursor[0] : firstDay;
+        long length = cursor != null ? cursor[1] : 0;
+        if (cursor != null) {
+            firstDay = (int) cursor[2];
+        }
+        if (day > lastDay) {
+            completed.put(resource, lastDay);
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("failed to create " + directory);
+        }
+        logger.debug("Backfilling '{}' from day '{}' through '{}'", resource, day, lastDay);
+        try (RandomAccessFile csv = new RandomAccessFile(csvFile, "rw")) {
+            // Drops what an interrupted backfill wrote after its last cursor
+            csv.setLength(length);
+            csv.seek(length);
+            if (length == 0) {
+                csv.write(HEADER.getBytes("UTF-8"));
+            }
+            if (download(resource, dailies, csv, day, lastDay, dateFormat, cursorFile, firstDay) <= lastDay) {
+                return;
+            }
+        }
+        completed.put(resource, lastDay);
+        logger.debug("Backfilled '{}' through day '{}' into '{}'", resource, lastDay, csvFile);
+    }
+
+    /**
+     * Downloads the days from <code>firstDay</code> up to the first day of the
+     * CSV file into a new file, followed by the records of the CSV file, and
+     * replaces the CSV file with it. Returns the new cursor, or null if the
+     * download stopped; it starts over when requested again.
+     */
+    private long[] extend(String resource, boolean dailies, File csvFile, File cursorFile, long[] cursor,
+            int firstDay, DateFormat dateFormat) throws IOException {
+        logger.debug("Extending backfill of '{}' from day '{}' back to day '{}'", resource, cursor[2], firstDay);
+        File temporary = new File(csvFile.getPath() + ".tmp");
+        long length;
+        try (RandomAccessFile csv = new RandomAccessFile(temporary, "rw")) {
+            csv.setLength(0);
+            csv.write(HEADER.getBytes("UTF-8"));
+            int oldFirstDay = (int) cursor[2];
+            if (download(resource, dailies, csv, firstDay, oldFirstDay - 1, dateFormat, null, firstDay) < oldFirstDay) {
+                length = -1;
+            } else {
+                // The records downloaded before, up to the cursor
+                try (RandomAccessFile old = new RandomAccessFile(csvFile, "r")) {
+                    old.seek(HEADER.getBytes("UTF-8").length);
+                    byte[] buffer = new byte[8192];
+                    long remaining = Math.min(cursor[1], old.length()) - old.getFilePointer();
+                    while (remaining > 0) {
+                        int read = old.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            break;
+                        }
+                        csv.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+                length = csv.getFilePointer();
+            }
+        }
+        if (length < 0) {
+            temporary.delete();
+            return null;
+        }
+        if (!temporary.renameTo(csvFile) && !(csvFile.delete() && temporary.renameTo(csvFile))) {
+            throw new IOException("failed to replace " + csvFile);
+        }
+        writeCursor(cursorFile, (int) cursor[0], length, firstDay);
+        return new long[] { cursor[0], length, firstDay };
+    }
+
+    /**
+     * Appends the days from <code>day</code> through <code>lastDay</code> to
+     * the CSV file, a page at a time, and moves the cursor after each page if
+     * there is a cursor file. Returns the first day not written, which is
+     * after <code>lastDay</code> unless a request failed or the thread was
+     * interrupted.
+     */
+    private int download(String resource, boolean dailies, RandomAccessFile csv, int day, int lastDay,
+            DateFormat dateFormat, File cursorFile, int firstDay) throws IOException {
+        while (day <= lastDay && !Thread.currentThread().isInterrupted()) {
+            int end;
+            // Last day the response lists
+            int listedThrough;
+            String query;
+            if (dailies) {
+                end = lastDay;
+                listedThrough = WhistleDailyStore.today();
+                query = "?count=" + (listedThrough - day + 1);
+            } else {
+                end = Math.min(day + pageDays - 1, lastDay);
+                listedThrough = end;
+                query = "/?start_time=" + dateFormat.format(new Date(day * MILLIS_PER_DAY)) + "&end_time="
+                        + dateFormat.format(new Date(end * MILLIS_PER_DAY));
+            }
+            WhistleDailies page = account.getUncachedData(resource + query,
+                    dailies ? WhistleJsonParser.DAILIES : WhistleJsonParser.DAILY_TOTALS);
+            if (page == null) {
+                logger.debug("Backfill of '{}' stopped at day '{}', continuing later", resource, day);
+                return day;
+            }
+            csv.write(toCsv(page, day, end, listedThrough, dateFormat).getBytes("UTF-8"));
+            day = end + 1;
+            if (cursorFile != null) {
+                writeCursor(cursorFile, day, csv.getFilePointer(), firstDay);
+            }
+            if (day <= lastDay && !pause()) {
+                return day;
+            }
+        }
+        return day;
+    }
+
+    // The records from startDay through endDay of a page listing the days from startDay through listedThrough, as
+    // CSV lines, oldest first
+    private static String toCsv(WhistleDailies page, int startDay, int endDay, int listedThrough,
+            DateFormat dateFormat) {
+        long[] records = new long[page.size()];
+        int count = 0;
+        for (int i = 0; i < page.size(); i++) {
+            // Dated as the store dates them
+            int day = WhistleDailyStore.getDay(page, i, startDay, listedThrough);
+            if (day != WhistleDailies.NO_DAY && day >= startDay && day <= endDay) {
+                records[count++] = (long) day << 32 | i;
+            }
+        }
+        Arrays.sort(records, 0, count);
+        StringBuilder csv = new StringBuilder(count * 40);
+        for (int r = 0; r < count; r++) {
+            int day = (int) (records[r] >>> 32);
+            int i = (int) records[r];
+            csv.append(dateFormat.format(new Date(day * MILLIS_PER_DAY))).append(',').append(day).append(',')
+                    .append(page.getMinutesActive(i)).append(',').append(page.getMinutesRest(i)).append(',')
+                    .append(page.getActivityGoal(i)).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // The next day, the length of the CSV file and its first day, or null if there is no valid cursor
+    private static long[] readCursor(File cursorFile, File csvFile) {
+        if (!cursorFile.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(cursorFile), "UTF-8"))) {
+            String[] fields = reader.readLine().split(",");
+            long nextDay = Long.parseLong(fields[0]);
+            // Cursors written before the first day was recorded take it from the file
+            long firstDay = fields.length > 2 ? Long.parseLong(fields[2]) : readFirstDay(csvFile, nextDay);
+            return new long[] { nextDay, Long.parseLong(fields[1]), firstDay };
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring cursor '{}', starting over: {}", cursorFile, e.toString());
+            return null;
+        }
+    }
+
+    // The day number of the first record of the CSV file, or the given day if it has none
+    private static long readFirstDay(File csvFile, long noRecords) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(csvFile), "UTF-8"))) {
+            reader.readLine();
+            String record = reader.readLine();
+            return record != null ? Long.parseLong(record.split(",")[1]) : noRecords;
+        }
+    }
+
+    // Replaces the cursor in one rename, so it is never seen half written
+    private static void writeCursor(File cursorFile, int nextDay, long length, int firstDay) throws IOException {
+        File temporary = new File(cursorFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8")) {
+            writer.write(nextDay + "," + length + "," + firstDay + "\n");
+        }
+        if (!temporary.renameTo(cursorFile) && !(cursorFile.delete() && temporary.renameTo(cursorFile))) {
+            throw new IOException("failed to replace " + cursorFile);
+        }
+    }
+}
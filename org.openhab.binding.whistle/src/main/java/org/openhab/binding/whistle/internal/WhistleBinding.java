@@ -8,17 +8,25 @@
  */
 package org.openhab.binding.whistle.internal;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.StringUtils;
 import org.openhab.binding.whistle.WhistleBindingProvider;
@@ -26,15 +34,12 @@ import org.openhab.core.binding.AbstractActiveBinding;
 import org.openhab.core.binding.BindingProvider;
 import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.types.State;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-
 /**
  * The Whistle Refresh Service polls the data with a configurable
  * interval and posts a new event of type ({@link DateTimeType} to the event bus.
@@ -45,13 +50,44 @@ import com.google.gson.JsonObject;
  */
 public class WhistleBinding extends AbstractActiveBinding<WhistleBindingProvider>implements ManagedService {
     private static final Logger logger = LoggerFactory.getLogger(WhistleBinding.class);
-    // URL for Whistle API
-    private static final String APIROOT = "https://app.whistle.com/api/";
+    // Directory for files kept across restarts, relative to the openHAB home
+    private static final String DEFAULT_DATA_DIR = "etc/whistle";
+    // File in the data directory keeping the last published values across restarts
+    private static final String SNAPSHOT_FILE = "snapshot";
+    // Delay before resolving pending bindings, so an items file is resolved in one batch
+    private static final long RESOLVE_DELAY = 1000L;
+    // Requests per endpoint and refresh cycles, over JMX and as items
+    private static final WhistleMetrics metrics = new WhistleMetrics();
+    // Configured accounts by name, each with its own token, connections and refresh threads
+    private final ConcurrentMap<String, WhistleAccount> accounts = new ConcurrentHashMap<String, WhistleAccount>();
+    // Replaces the HTTP transport of all accounts, if set
+    private volatile WhistleTransport transport;
     // Default refresh interval
     private long refreshInterval = 900000L;
-    protected static String username;
-    protected static String password;
-    protected static String authToken;
+    // Default refresh interval by command, e.g. 'refresh.device'
+    private final Map<String, Long> commandIntervals = new ConcurrentHashMap<String, Long>();
+    // How often the scheduler checks for due resources
+    private long tick = 60000L;
+    // Default time after which an unchanged value is published again; 0 for never
+    private long republishInterval = 0L;
+    // Last value published to each item since it was bound
+    private final ConcurrentMap<String, Published> publishedStates = new ConcurrentHashMap<String, Published>();
+    // Last published values and devices, restored when the binding starts
+    private volatile WhistleSnapshot snapshot;
+    // Items activated with a device from the snapshot, until the roster has confirmed it
+    private final Set<String> unverifiedItems = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Items whose binding was removed, e.g. by an items file reload, until the next resolve batch forgets them
+    private final Set<String> removedItems = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // Compiled binding configurations by item, replaced when an item's binding or device changes
+    private final ConcurrentMap<String, WhistleItemPlan> plans = new ConcurrentHashMap<String, WhistleItemPlan>();
+    // Items grouped by account and resource, and the items bound to metrics, as of the last change of bindings
+    private volatile Map<WhistleAccount, WhistleRequestPlanner> planners = Collections.emptyMap();
+    private volatile List<WhistleItemPlan> metricsPlans = Collections.emptyList();
+    private volatile boolean plansChanged = true;
+    // Set while bindings may be pending or unverified, so ticks in between don't look through all items
+    private volatile boolean resolveNeeded = true;
+    private ScheduledExecutorService resolver;
+    private final AtomicBoolean resolveScheduled = new AtomicBoolean();
 
     @Override
     protected String getName() {
@@ -60,7 +96,31 @@ public class WhistleBinding extends AbstractActiveBinding<WhistleBindingProvider
 
     @Override
     protected long getRefreshInterval() {
-        return refreshInterval;
+        return Math.min(tick, refreshInterval);
+    }
+
+    @Override
+    public void activate() {
+        resolver = Executors.newSingleThreadScheduledExecutor(new WhistleThreadFactory("Whistle binding resolver"));
+        metrics.register();
+        super.activate();
+    }
+
+    @Override
+    public void deactivate() {
+        super.deactivate();
+        for (WhistleAccount account : accounts.values()) {
+            account.shutdown();
+        }
+        accounts.clear();
+        if (snapshot != null) {
+            snapshot.flush();
+        }
+        metrics.unregister();
+        if (resolver != null) {
+            resolver.shutdownNow();
+            resolver = null;
+        }
     }
 
     /**
@@ -72,318 +132,669 @@ public class WhistleBinding extends AbstractActiveBinding<WhistleBindingProvider
             logger.warn("There is no existing Whistle binding configuration => refresh cycle aborted!");
             return;
         }
+        long cycleStart = System.nanoTime();
+        long requestsBefore = metrics.getRequestCount();
+        long publishedBefore = metrics.getCycles().getItemsPublished();
+        if (resolveNeeded || !removedItems.isEmpty()) {
+            resolvePendingBindings();
+        }
+        if (plansChanged) {
+            planCycles();
+        }
+        // Start each account's due fetches on its own threads, so the accounts refresh in parallel
+        Map<WhistleAccount, WhistleRequestPlanner> planners = this.planners;
+        long now = System.currentTimeMillis();
+        int requests = 0;
+        Map<WhistleAccount, WhistleRefreshEngine.Batch> batches = null;
+        for (WhistleAccount account : accounts.values()) {
+            WhistleRequestPlanner planner = planners.get(account);
+            if (planner == null) {
+                account.getScheduler().retain(Collections.<String> emptySet());
+                account.getResponseCache().retain(Collections.<String> emptySet());
+                continue;
+            }
+            List<Callable<Void>> tasks = getDueTasks(account, planner, now);
+            if (!tasks.isEmpty()) {
+                logger.debug("Refresh cycle of account '{}' needs '{}' of '{}' requests for '{}' items", account,
+                        tasks.size(), planner.getResourceCount(), planner.getItemCount());
+                if (batches == null) {
+                    batches = new HashMap<WhistleAccount, WhistleRefreshEngine.Batch>();
+                }
+                batches.put(account, account.getRefreshEngine().submitAll(tasks));
+                requests += tasks.size();
+            }
+        }
+        if (batches != null) {
+            // Each resource publishes its items as soon as it has been fetched
+            int completed = 0;
+            for (Map.Entry<WhistleAccount, WhistleRefreshEngine.Batch> batch : batches.entrySet()) {
+                completed += batch.getKey().getRefreshEngine().await(batch.getValue());
+                for (Callable<Void> task : batch.getValue().getCancelled()) {
+                    // Scheduled as fetched when it started; retry on the next tick instead of an interval later
+                    String resource = ((ResourceFetch) task).resource;
+                    logger.debug("Fetch of resource '{}' cancelled, retrying on the next tick", resource);
+                    batch.getKey().getScheduler().reset(resource);
+                }
+            }
+            logger.debug("Refresh cycle completed '{}' of '{}' requests", completed, requests);
+            // Ticks without anything due don't count as cycles
+            metrics.getCycles().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycleStart),
+                    metrics.getCycles().getItemsPublished() - publishedBefore,
+                    metrics.getRequestCount() - requestsBefore);
+        }
+        publishMetrics();
+        // Values published during the cycle are written in one go
+        if (snapshot != null) {
+            snapshot.flush();
+        }
+    }
+
+    /**
+     * Groups the plans of the active items by account and by the resource they read from, so each resource is
+     * only fetched once per cycle. The grouping is kept until bindings or the configuration change.
+     */
+    private void planCycles() {
+        plansChanged = false;
+        Map<WhistleAccount, WhistleRequestPlanner> planners = new HashMap<WhistleAccount, WhistleRequestPlanner>();
+        List<WhistleItemPlan> metricsPlans = new ArrayList<WhistleItemPlan>();
         for (WhistleBindingProvider provider : providers) {
-            logger.debug("Refresh bindings '{}'", provider.getItemNames());
             for (String itemName : provider.getItemNames()) {
-                logger.debug("Update item '{}'", itemName);
-                updateWhistle(provider, itemName, true);
+                WhistleItemPlan plan = getPlan(provider, itemName);
+                if (plan == null) {
+                    continue;
+                }
+                if (plan.command == WhistleCommand.METRICS) {
+                    metricsPlans.add(plan);
+                    continue;
+                }
+                WhistleAccount account = plan.resource != null ? getAccount(plan.account, itemName) : null;
+                if (account != null) {
+                    requireHistory(account, plan);
+                    WhistleRequestPlanner planner = planners.get(account);
+                    if (planner == null) {
+                        planner = new WhistleRequestPlanner();
+                        planners.put(account, planner);
+                    }
+                    planner.addItem(plan, getInterval(plan));
+                }
             }
         }
+        this.planners = planners;
+        this.metricsPlans = metricsPlans;
     }
 
-    private void updateWhistle(WhistleBindingProvider provider, String itemName, Boolean update) {
-        logger.debug("update item '{}'", itemName);
-        WhistleGenericBindingProvider WhistleBindingProvider = (WhistleGenericBindingProvider) provider;
-        if (WhistleBindingProvider.providesBindingFor(itemName)) {
-            String dogID = WhistleBindingProvider.getDogID(itemName);
-            String deviceID = WhistleBindingProvider.getDeviceID(itemName);
-            String command = WhistleBindingProvider.getCommand(itemName);
-            String parameter = WhistleBindingProvider.getParameter(itemName);
-            switch (command) {
-                case "activity":
-                    // Get activity, day x since today (today is day 0) - Activity / Goal
-                    long[] dogActivity = getActivity(dogID, Integer.parseInt(parameter), authToken);
-                    logger.debug("Activity the last '{}' days. Active: '{}' / Goal: '{}'", parameter, dogActivity[0],
-                            dogActivity[1]);
-                    if (update) {
-                        eventPublisher.postUpdate(itemName, new DecimalType(dogActivity[0]));
-                    }
-                    break;
-                case "target":
-                    // Get activity, day x since today (today is day 0) - Activity / Goal
-                    long[] dogGoal = getActivity(dogID, Integer.parseInt(parameter), authToken);
-                    logger.debug("Activity the last '{}' days. Active: '{}' / Goal: '{}'", parameter, dogGoal[0],
-                            dogGoal[1]);
-                    if (update) {
-                        eventPublisher.postUpdate(itemName, new DecimalType(dogGoal[1]));
-                    }
-                    break;
-                case "device":
-                    switch (parameter) {
-                        case "battery":
-                            Double battResult = Double.parseDouble(getDeviceInfo(deviceID, parameter, authToken));
-                            logger.debug("Battery: '{}'", battResult);
-                            if (update) {
-                                eventPublisher.postUpdate(itemName, new DecimalType(battResult));
-                            }
-                            break;
-                        default:
-                            logger.debug("Unknown parameter '{}'", parameter);
-                            break;
-                    }
-                    break;
-                case "goals":
-                    // Current streak / longest
-                    try {
-                        Integer goalsResult = getGoals(dogID, parameter, authToken);
-                        logger.debug("Goal streak: '{}'", goalsResult);
-                        if (update) {
-                            eventPublisher.postUpdate(itemName, new DecimalType(goalsResult));
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    break;
-                case "averageactive":
-                    int[] dogAverageActive = getAverages(dogID, Integer.parseInt(parameter), authToken);
-                    logger.debug("Average last '{}' days - Active: '{}', Rest: '{}'", parameter, dogAverageActive[0],
-                            dogAverageActive[1]);
-                    if (update) {
-                        eventPublisher.postUpdate(itemName, new DecimalType(dogAverageActive[0]));
-                    }
-                    break;
-                case "averagerest":
-                    int[] dogAverageRest = getAverages(dogID, Integer.parseInt(parameter), authToken);
-                    logger.debug("Average last '{}' days - Active: '{}', Rest: '{}'", parameter, dogAverageRest[0],
-                            dogAverageRest[1]);
-                    if (update) {
-                        eventPublisher.postUpdate(itemName, new DecimalType(dogAverageRest[1]));
-                    }
-                    break;
-                default:
-                    logger.debug("Unknown command '{}'", command);
+    /**
+     * Returns the compiled binding configuration of the item, or null if it has none or it is invalid. The plan
+     * is compiled when the item is bound, and replaced once the item's device changes.
+     */
+    private WhistleItemPlan getPlan(WhistleBindingProvider provider, String itemName) {
+        WhistleItemPlan plan = plans.get(itemName);
+        if (plan == null) {
+            if (!provider.providesBindingFor(itemName)) {
+                return null;
             }
+            try {
+                plan = WhistleItemPlan.compile(provider, itemName);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Invalid binding of item '{}': {}", itemName, e.getMessage());
+                return null;
+            }
+            plans.put(itemName, plan);
+            return plan;
+        }
+        String deviceID = provider.getDeviceID(itemName);
+        if (deviceID != plan.deviceID && (deviceID == null || !deviceID.equals(plan.deviceID))) {
+            plan = plan.withDevice(deviceID);
+            plans.put(itemName, plan);
         }
+        return plan;
     }
 
-    // Averages
-    private long[] getActivity(String DogID, int Days, String authToken) {
-        logger.debug("getActivity() - '{}' '{}'", DogID, Days);
-        try {
-            // Get days since epoch
-            long DaysSinceEpoch = System.currentTimeMillis() / 1000 / 60 / 60 / 24 - Days;
-            logger.debug("Activity for days since Epoch: " + DaysSinceEpoch);
-            int D = Days + 1;
-            // Get activity
-            JsonArray response = getArrayData("dogs/" + DogID + "/dailies?count=" + D, authToken);
-            for (int i = 0; i < response.size(); i++) {
-                JsonObject jobject = response.get(i).getAsJsonObject();
-                if (DaysSinceEpoch == jobject.get("day_number").getAsLong()) {
-                    long[] activityArray = new long[2];
-                    activityArray[0] = jobject.get("minutes_active").getAsLong();
-                    activityArray[1] = jobject.get("activity_goal").getAsLong();
-                    logger.debug("Active: " + activityArray[0] + ", Goal: " + activityArray[1]);
-                    return activityArray;
-                }
+    /**
+     * Publishes the metrics bound to items, without counting them as published items.
+     */
+    private void publishMetrics() {
+        List<WhistleItemPlan> metricsPlans = this.metricsPlans;
+        for (int i = 0; i < metricsPlans.size(); i++) {
+            WhistleItemPlan plan = metricsPlans.get(i);
+            Number value = metrics.getValue(plan.parameter);
+            if (value != null) {
+                eventPublisher.postUpdate(plan.itemName, new DecimalType(value.toString()));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return null;
     }
 
-    // Averages
-    private int[] getAverages(String DogID, int days, String authToken) {
-        logger.debug("getAverages() - '{}' '{}'", DogID, days);
-        try {
-            // Starting date
-            DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.DATE, -days);
-            Date todate = cal.getTime();
-            String fromdate = dateFormat.format(todate);
-            logger.debug("fromdate: " + fromdate);
-            // Get device information
-            JsonArray response = getArrayData("dogs/" + DogID + "/stats/daily_totals/?start_time=" + fromdate,
-                    authToken);
-            // Totals
-            int[] activityArray = new int[2];
-            // Loop through the data, but don't include today's data
-            for (int i = 0; i < response.size() - 1; i++) {
-                JsonObject jobject = response.get(i).getAsJsonObject();
-                activityArray[0] += jobject.get("minutes_active").getAsInt();
-                activityArray[1] += jobject.get("minutes_rest").getAsInt();
-                logger.trace("Active / Rest, '{}' / '{}'", jobject.get("minutes_active").getAsInt(),
-                        jobject.get("minutes_rest").getAsInt());
+    /**
+     * Returns the fetches of the account's resources that are due, and schedules their next fetch.
+     */
+    private List<Callable<Void>> getDueTasks(WhistleAccount account, WhistleRequestPlanner planner, long now) {
+        WhistleScheduler scheduler = account.getScheduler();
+        scheduler.retain(planner.getResources());
+        account.getResponseCache().retain(planner.getResources());
+        List<Callable<Void>> tasks = null;
+        for (String resource : planner.getResources()) {
+            // A changed refresh interval only moves the next fetch
+            scheduler.reschedule(resource, planner.getInterval(resource));
+            if (!scheduler.isDue(resource, now, getRefreshInterval())) {
+                continue;
+            }
+            scheduler.fetched(resource, now, planner.getInterval(resource));
+            List<WhistleItemPlan> items = planner.getItems(resource);
+            requestBackfill(account, items.get(0));
+            if (tasks == null) {
+                tasks = new ArrayList<Callable<Void>>();
+            }
+            tasks.add(new ResourceFetch(account, resource, items));
+        }
+        return tasks != null ? tasks : Collections.<Callable<Void>> emptyList();
+    }
+
+    private void refreshResource(WhistleAccount account, String resource, List<WhistleItemPlan> items) {
+        // All items of a resource read the same endpoint, so any of them tells how to parse it
+        WhistleHttpClient.Response<?> response = fetch(account, resource, items.get(0).command);
+        if (response == null || response.value == null) {
+            // The items keep their last known state
+            logger.debug("No data for resource '{}', skipping '{}' items", resource, items.size());
+            if (!account.isAvailable()) {
+                // Retry as soon as the API is back instead of waiting a full interval
+                account.getScheduler().reset(resource);
+            }
+            return;
+        }
+        account.getResponseCache().put(resource, response.value);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < items.size(); i++) {
+            WhistleItemPlan plan = items.get(i);
+            // Unchanged data has already been published, except to items bound since or due to be republished
+            Published last = publishedStates.get(plan.itemName);
+            if (response.modified || last == null || isRepublishDue(plan, last, now)) {
+                updateWhistle(plan, response.value, true);
             }
-            // Average
-            activityArray[0] = activityArray[0] / days;
-            activityArray[1] = activityArray[1] / days;
-            logger.debug("Active: " + activityArray[0] + ", Rest: " + activityArray[1]);
-            return activityArray;
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return null;
     }
 
-    private Integer getGoals(String dogID, String parameter, String authToken) throws Exception {
-        // logger.debug("Looking for goal information on dog Id: '" + dogId + "'");
-        logger.info("getGoals() - '{}' '{}'", dogID, parameter);
+    /**
+     * Publishes the item's value from the last response of its resource, without a request. A stale response
+     * is published too, and its resource fetched on the next tick. Returns false if there is no response to
+     * publish from.
+     */
+    private boolean publishFromCache(WhistleBindingProvider provider, String itemName) {
+        WhistleItemPlan plan = getPlan(provider, itemName);
+        WhistleAccount account = plan != null && plan.resource != null ? getAccount(plan.account, itemName) : null;
+        if (account == null) {
+            return false;
+        }
+        requireHistory(account, plan);
+        WhistleResponseCache.Entry entry = account.getResponseCache().get(plan.resource);
+        if (entry == null) {
+            return false;
+        }
+        int historyStart = WhistleDailyStore.today() - plan.historyDays + 1;
+        if (entry.value instanceof WhistleDailyStore && !((WhistleDailyStore) entry.value).isSyncedFrom(historyStart)) {
+            // The item needs more days than have been synced so far
+            return false;
+        }
+        logger.debug("Update item '{}' from cache", itemName);
+        updateWhistle(plan, entry.value, true);
+        if (account.getResponseCache().isStale(plan.resource, entry)) {
+            account.getScheduler().reset(plan.resource);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the account of the given name, or null if it isn't configured.
+     */
+    private WhistleAccount getAccount(String name, String itemName) {
+        WhistleAccount account = accounts.get(name != null ? name : WhistleAccount.DEFAULT);
+        if (account == null) {
+            logger.debug("No account '{}' configured for item '{}'", name, itemName);
+        }
+        return account;
+    }
+
+    /**
+     * Returns the refresh interval of the item: its own, or the default for its command, or the binding's
+     * default.
+     */
+    private long getInterval(WhistleItemPlan plan) {
+        if (plan.refreshInterval > 0) {
+            return plan.refreshInterval;
+        }
+        Long commandInterval = commandIntervals.get(plan.command.key);
+        return commandInterval != null ? commandInterval : refreshInterval;
+    }
+
+    /**
+     * Makes sure the daily store read by the item keeps as many days as the item needs.
+     */
+    private void requireHistory(WhistleAccount account, WhistleItemPlan plan) {
+        if (plan.command.isDaily()) {
+            account.getDailyStore(plan.resource).requireDays(plan.historyDays);
+        }
+    }
+
+    /**
+     * Queues the download of the full history of the daily records read by the item, if configured.
+     */
+    private void requestBackfill(WhistleAccount account, WhistleItemPlan plan) {
+        if (plan.command.isDaily()) {
+            account.getBackfill().request(plan.dogID, plan.resource,
+                    plan.command.parser == WhistleJsonParser.DAILIES);
+        }
+    }
+
+    /**
+     * Fetches the resource, conditionally if it was fetched before. Daily records are synced into the dog's
+     * local store, which is returned instead of the response; values derived from it change with the date, so
+     * it always counts as modified.
+     */
+    private WhistleHttpClient.Response<?> fetch(WhistleAccount account, String resource, WhistleCommand command) {
+        if (command.isDaily()) {
+            WhistleDailyStore store = syncDailyStore(account, resource,
+                    command.parser == WhistleJsonParser.DAILIES);
+            return store != null ? new WhistleHttpClient.Response<WhistleDailyStore>(store, true) : null;
+        }
+        return account.getConditionalData(resource, command.parser);
+    }
+
+    /**
+     * Fetches the days since the last sync, including today, into the store of the resource. Returns the
+     * store, or null if the request failed.
+     */
+    private WhistleDailyStore syncDailyStore(WhistleAccount account, String resource, boolean dailies) {
+        WhistleDailyStore store = account.getDailyStore(resource);
+        int today = WhistleDailyStore.today();
+        int startDay = store.getSyncStartDay(today);
+        String query;
+        if (dailies) {
+            query = "?count=" + (today - startDay + 1);
+        } else {
+            query = "/?start_time=" + WhistleDailyStore.formatDate(startDay);
+        }
+        logger.debug("Syncing '{}' from day '{}'", resource, startDay);
+        WhistleDailies response = account.getData(resource + query,
+                dailies ? WhistleJsonParser.DAILIES : WhistleJsonParser.DAILY_TOTALS);
+        if (response == null) {
+            return null;
+        }
+        store.merge(response, startDay, today);
+        return store;
+    }
+
+    /**
+     * Publishes the item's value from the data of its resource.
+     */
+    void updateWhistle(WhistleBindingProvider provider, String itemName, Object data, Boolean update) {
+        WhistleItemPlan plan = getPlan(provider, itemName);
+        if (plan != null) {
+            updateWhistle(plan, data, update);
+        }
+    }
+
+    /**
+     * Publishes the item's value from the data of its resource.
+     */
+    void updateWhistle(WhistleItemPlan plan, Object data, boolean update) {
+        State state;
         try {
-            JsonObject dogGoals = getObjectData("dogs/" + dogID + "/stats/goals", authToken);
-            switch (parameter) {
-                case "current":
-                    Integer currentStreak = dogGoals.get("current_streak").getAsInt();
-                    logger.debug("Current Streak: " + currentStreak);
-                    return currentStreak;
-                case "longest":
-                    Integer longestStreak = dogGoals.get("longest_streak").getAsInt();
-                    logger.debug("Longest Streak: " + longestStreak);
-                    return longestStreak;
-                default:
-                    logger.warn("Unknown parameter; ''{}", parameter);
-                    break;
+            state = plan.extract(data);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to evaluate Whistle data for item '{}': {}", plan.itemName, e.toString());
+            return;
+        }
+        if (state == null) {
+            logger.debug("No value of '{}' for item '{}'", plan.field, plan.itemName);
+            return;
+        }
+        if (update) {
+            publish(plan, state);
+        }
+    }
+
+    /**
+     * Publishes the item's value, unless it is within the item's deadband of the value last published and that
+     * was published less than the republish interval ago.
+     */
+    private void publish(WhistleItemPlan plan, State state) {
+        long now = System.currentTimeMillis();
+        Published last = publishedStates.get(plan.itemName);
+        if (last != null && !isChange(plan, last.state, state) && !isRepublishDue(plan, last, now)) {
+            logger.trace("Item '{}' unchanged at '{}'", plan.itemName, state);
+            return;
+        }
+        logger.debug("Update item '{}' to '{}'", plan.itemName, state);
+        eventPublisher.postUpdate(plan.itemName, state);
+        publishedStates.put(plan.itemName, new Published(plan.bindingKey, state, now));
+        metrics.getCycles().itemPublished();
+        if (snapshot != null) {
+            snapshot.putValue(plan.itemName, plan.bindingKey, state);
+        }
+    }
+
+    private boolean isRepublishDue(WhistleItemPlan plan, Published last, long now) {
+        long interval = plan.republishInterval > 0 ? plan.republishInterval : republishInterval;
+        return interval > 0 && now - last.time >= interval;
+    }
+
+    /**
+     * Returns true if the new state differs from the last published one by more than the item's deadband.
+     */
+    private static boolean isChange(WhistleItemPlan plan, State last, State state) {
+        if (plan.deadband <= 0 || !(last instanceof DecimalType) || !(state instanceof DecimalType)) {
+            return !state.equals(last);
+        }
+        BigDecimal lastValue = ((DecimalType) last).toBigDecimal();
+        BigDecimal difference = ((DecimalType) state).toBigDecimal().subtract(lastValue).abs();
+        double threshold = plan.deadbandPercent ? lastValue.abs().doubleValue() * plan.deadband / 100
+                : plan.deadband;
+        return difference.doubleValue() > threshold;
+    }
+
+    /**
+     * Publishes the item's last known value from the snapshot and, if its binding is pending, activates it
+     * with the device last known for its dog. Both are stale: the roster confirms the device and the next
+     * refresh of the item publishes its current value, as restored values don't count as published. Returns
+     * true if the binding has been activated.
+     */
+    private boolean restore(WhistleBindingProvider provider, String itemName) {
+        WhistleSnapshot snapshot = this.snapshot;
+        if (snapshot == null || !provider.providesBindingFor(itemName)) {
+            return false;
+        }
+        boolean activated = false;
+        if (provider.isPending(itemName)) {
+            String account = provider.getAccount(itemName);
+            String deviceID = snapshot.getDeviceID(account != null ? account : WhistleAccount.DEFAULT,
+                    provider.getDogID(itemName));
+            if (deviceID != null) {
+                logger.debug("Activated binding for item '{}' with last known deviceID '{}'", itemName, deviceID);
+                setDeviceID(provider, itemName, deviceID);
+                unverifiedItems.add(itemName);
+                resolveNeeded = true;
+                activated = true;
+            }
+        }
+        WhistleItemPlan plan = getPlan(provider, itemName);
+        WhistleSnapshot.Value value = plan != null ? snapshot.getValue(itemName, plan.bindingKey) : null;
+        if (value != null && eventPublisher != null) {
+            logger.debug("Restored value '{}' of item '{}', published at '{}'", value.state, itemName,
+                    new Date(value.timestamp));
+            eventPublisher.postUpdate(itemName, value.state);
+        }
+        return activated;
+    }
+
+    /**
+     * Switches to the snapshot in the data directory, restoring its values to all items bound so far.
+     */
+    private void loadSnapshot(File dataDirectory) {
+        File file = new File(dataDirectory, SNAPSHOT_FILE);
+        if (snapshot != null && snapshot.getFile().equals(file)) {
+            return;
+        }
+        if (snapshot != null) {
+            snapshot.flush();
+        }
+        WhistleSnapshot loaded = new WhistleSnapshot(file);
+        loaded.load();
+        snapshot = loaded;
+        for (WhistleBindingProvider provider : providers) {
+            for (String itemName : provider.getItemNames()) {
+                restore(provider, itemName);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return null;
     }
 
-    private String getDeviceInfo(String deviceID, String parameter, String authToken) {
-        logger.info("getDeviceInfo() - '{}' '{}'", deviceID, parameter);
+    /**
+     * Sends the requests of all accounts through the transport, e.g. an in-process one when measuring the
+     * binding.
+     */
+    void setTransport(WhistleTransport transport) {
+        this.transport = transport;
+        for (WhistleAccount account : accounts.values()) {
+            account.setTransport(transport);
+        }
+    }
+
+    /**
+     * Schedules the resolution of pending bindings on the resolver thread. Requests
+     * arriving while one is scheduled are served by the same batch.
+     */
+    private void scheduleResolve() {
+        ScheduledExecutorService executor = resolver;
+        if (executor != null && resolveScheduled.compareAndSet(false, true)) {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    resolveScheduled.set(false);
+                    resolvePendingBindings();
+                }
+            }, RESOLVE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Activates all pending bindings whose dog can be found in the roster of their account. Needs the
+     * account's credentials; until they are configured, its bindings stay pending. Forgets the items whose
+     * binding has been removed and not added again since.
+     */
+    private synchronized void resolvePendingBindings() {
+        resolveNeeded = false;
+        forgetRemovedItems();
         try {
-            // Get device information
-            JsonObject deviceInfo = GetDeviceInformation(deviceID, authToken);
-            // Round battery level to 2 decimal places
-            double f = Double.parseDouble(deviceInfo.get("battery_level").getAsString());
-            switch (parameter) {
-                case "battery":
-                    String batteryLevel = String.format("%.2f", f);
-                    logger.debug("Battery Level: " + batteryLevel);
-                    return batteryLevel;
-                case "lastcheckin":
-                    String lastCheckIn = deviceInfo.get("last_check_in").getAsString();
-                    logger.debug("Last Check In: " + lastCheckIn);
-                    return lastCheckIn;
-                default:
-                    logger.warn("Unknown parameter; '{}'", parameter);
-                    break;
+            for (WhistleBindingProvider provider : providers) {
+                for (String itemName : provider.getItemNames()) {
+                    boolean unverified = unverifiedItems.contains(itemName);
+                    if (!provider.isPending(itemName) && !unverified) {
+                        continue;
+                    }
+                    WhistleAccount account = getAccount(provider, itemName);
+                    // Without a token, none of the account's dogs can be found
+                    if (account == null || !account.hasCredentials() || account.getToken() == null) {
+                        logger.debug("No credentials or token for item '{}' yet, binding stays pending", itemName);
+                        resolveNeeded = true;
+                        continue;
+                    }
+                    String dogID = provider.getDogID(itemName);
+                    String deviceID = account.getDeviceID(dogID);
+                    unverifiedItems.remove(itemName);
+                    if (deviceID != null && deviceID.equals(provider.getDeviceID(itemName))) {
+                        logger.debug("Confirmed deviceID '{}' of item '{}'", deviceID, itemName);
+                    } else if (deviceID != null) {
+                        logger.debug("Activated binding for item '{}': dogID '{}', deviceID '{}'", itemName, dogID,
+                                deviceID);
+                        setDeviceID(provider, itemName, deviceID);
+                        if (snapshot != null) {
+                            snapshot.putDeviceID(account.getName(), dogID, deviceID);
+                        }
+                        if (!publishFromCache(provider, itemName)) {
+                            // Fetch on the next tick, even if other items already share the resource
+                            account.getScheduler().reset(getPlan(provider, itemName).resource);
+                        }
+                    } else {
+                        if (unverified) {
+                            // The dog has gone since the snapshot was written
+                            setDeviceID(provider, itemName, null);
+                        }
+                        logger.error("Dog '{}' not found in account '{}'. Binding for item '{}' stays inactive",
+                                dogID, account, itemName);
+                        resolveNeeded = true;
+                    }
+                }
             }
         } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
-    // HTTP POST request to get Authentication Token from Whistle
-    protected static String getAuthToken(String username, String password) throws Exception {
-        logger.debug("Using username: '{}' / password: '{}'", username, password);
-
-        URL obj = new URL(APIROOT + "tokens.json");
-        HttpsURLConnection con = (HttpsURLConnection) obj.openConnection();
-        // add request headers and parameters
-        con.setDoOutput(true);
-        con.setRequestProperty("Content-Type", "application/json");
-        con.setRequestProperty("User-Agent", "WhistleApp/102 (iPhone; iOS 7.0.4; Scale/2.00)");
-        con.setRequestMethod("POST");
-        String urlParameters = "{\"password\":\"" + password + "\",\"email\":\"" + username
-                + "\",\"app_id\":\"com.whistle.WhistleApp\"}";
-        DataOutputStream wr = new DataOutputStream(con.getOutputStream());
-        wr.writeBytes(urlParameters);
-        wr.flush();
-        wr.close();
-        if (con.getResponseCode() != 200) {
-            logger.error("Username / password combination didn't work. Failed to get AuthenticationToken");
-            return null;
+            logger.warn("Failed to resolve Whistle bindings, will retry on next refresh", e);
+            resolveNeeded = true;
         }
-        // Read the buffer
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        String response = in.readLine();
-        in.close();
-        // Parse the data and return the token
-        JsonObject jobj = new Gson().fromJson(response, JsonObject.class);
-        return jobj.get("token").getAsString();
-    }
-
-    // Generic function when returning a JsonArray
-    static private JsonArray getArrayData(String APIURL, String authToken) throws Exception {
-        String response = GetData(new URL(APIROOT + APIURL), authToken);
-        JsonArray jobj = new Gson().fromJson(response, JsonArray.class);
-        return jobj;
-    }
-
-    // Generic function when returning a JsonObject
-    static private JsonObject getObjectData(String APIURL, String authToken) throws Exception {
-        String response = GetData(new URL(APIROOT + APIURL), authToken);
-        JsonObject jobj = new Gson().fromJson(response, JsonObject.class);
-        return jobj;
-    }
-
-    // Generic function to get data from Whistle
-    static private String GetData(URL obj, String authToken) throws Exception {
-        HttpsURLConnection con = (HttpsURLConnection) obj.openConnection();
-        // add request headers and parameters
-        con.setDoOutput(true);
-        con.setRequestProperty("Content-Type", "application/json");
-        con.setRequestProperty("User-Agent", "WhistleApp/102 (iPhone; iOS 7.0.4; Scale/2.00)");
-        con.setRequestProperty("X-Whistle-AuthToken", authToken);
-        // System.out.println("Response Code : " + con.getResponseCode());
-        if (con.getResponseCode() != 200) {
-            logger.error("Failed to get requested data, response code: '{}'", con.getResponseCode());
-            return null;
+        if (snapshot != null) {
+            snapshot.flush();
         }
-        // Get the data
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        String response = in.readLine();
-        in.close();
-        return response;
-    }
-
-    // Enumerate available dogs
-    static protected String GetDogDeviceID(String DogId, String token) throws Exception {
-        logger.debug("Looking for DogId: '" + DogId + "'");
-        JsonArray response = getArrayData("dogs.json", token);
-        // logger.trace("JSON Array size is : " + response.size());
-        // logger.trace("JSONArray: " + response);
-        for (int i = 0; i < response.size(); i++) {
-            // logger.debug("On loop " + i + ", found " + response.get(i));
-            JsonObject jobject = response.get(i).getAsJsonObject();
-            String foundDogId = jobject.get("id").getAsString();
-            logger.info("Found DogID: '{}' / '{}'", foundDogId, jobject.get("name").getAsString());
-            // A match?
-            if (DogId.equals(foundDogId)) {
-                logger.debug("Match found: DogId: '" + DogId + "', foundDogId: '" + foundDogId + "'");
-                return jobject.get("device_id").getAsString();
+    }
+
+    private void forgetRemovedItems() {
+        for (String itemName : removedItems) {
+            removedItems.remove(itemName);
+            if (!isBound(itemName)) {
+                logger.debug("Forgetting item '{}'", itemName);
+                plans.remove(itemName);
+                publishedStates.remove(itemName);
+                unverifiedItems.remove(itemName);
+                if (snapshot != null) {
+                    snapshot.removeValue(itemName);
+                }
             }
         }
-        // No match found
-        return null;
     }
 
-    // GetDeviceInformation
-    static private JsonObject GetDeviceInformation(String deviceId, String token) throws Exception {
-        logger.debug("Looking for information on device Id: '" + deviceId + "'");
-        return getObjectData("devices/" + deviceId + ".json", token);
+    private boolean isBound(String itemName) {
+        for (WhistleBindingProvider provider : providers) {
+            if (provider.providesBindingFor(itemName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Has the roster confirm the devices of the account's active bindings, after its credentials changed.
+     */
+    private void verifyBindings(WhistleAccount account) {
+        for (WhistleBindingProvider provider : providers) {
+            for (String itemName : provider.getItemNames()) {
+                WhistleItemPlan plan = getPlan(provider, itemName);
+                if (plan != null && plan.command.needsDevice() && !provider.isPending(itemName)
+                        && getAccount(provider, itemName) == account) {
+                    unverifiedItems.add(itemName);
+                    resolveNeeded = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Activates a pending binding with the device its dog had when the roster was last loaded, if it is known.
+     */
+    private void activateFromRoster(WhistleBindingProvider provider, String itemName) {
+        WhistleAccount account = getAccount(provider, itemName);
+        String deviceID = account != null ? account.getCachedDeviceID(provider.getDogID(itemName)) : null;
+        if (deviceID != null) {
+            logger.debug("Activated binding for item '{}' with cached deviceID '{}'", itemName, deviceID);
+            setDeviceID(provider, itemName, deviceID);
+        }
+    }
+
+    /**
+     * Binds the item to the device, or makes it pending if the device is null. Its plan follows on the next
+     * tick.
+     */
+    private void setDeviceID(WhistleBindingProvider provider, String itemName, String deviceID) {
+        provider.setDeviceID(itemName, deviceID);
+        plansChanged = true;
+    }
+
+    /**
+     * Returns the account the item's dog is read through, or null if it isn't configured.
+     */
+    private WhistleAccount getAccount(WhistleBindingProvider provider, String itemName) {
+        return getAccount(provider.getAccount(itemName), itemName);
     }
 
     protected void addBindingProvider(WhistleBindingProvider bindingProvider) {
         super.addBindingProvider(bindingProvider);
+        plansChanged = true;
+        resolveNeeded = true;
     }
 
     protected void removeBindingProvider(WhistleBindingProvider bindingProvider) {
         super.removeBindingProvider(bindingProvider);
+        plans.clear();
+        plansChanged = true;
     }
 
     @Override
     @SuppressWarnings("rawtypes")
     public void updated(Dictionary config) throws ConfigurationException {
         if (config != null) {
-            String usernameString = (String) config.get("username");
-            if (StringUtils.isNotBlank(usernameString)) {
-                username = usernameString;
-            }
-            String passwordString = (String) config.get("password");
-            if (StringUtils.isNotBlank(passwordString)) {
-                password = passwordString;
-            }
+            String dataDir = (String) config.get("datadir");
+            File dataDirectory = new File(StringUtils.isNotBlank(dataDir) ? dataDir : DEFAULT_DATA_DIR);
+            configureAccounts(config, dataDirectory);
+            loadSnapshot(dataDirectory);
             String refreshIntervalString = (String) config.get("refresh");
             if (StringUtils.isNotBlank(refreshIntervalString)) {
                 refreshInterval = Long.parseLong(refreshIntervalString);
             }
+            String republishString = (String) config.get("republish");
+            republishInterval = StringUtils.isNotBlank(republishString) ? Long.parseLong(republishString) : 0L;
+            String tickString = (String) config.get("tick");
+            if (StringUtils.isNotBlank(tickString)) {
+                tick = Long.parseLong(tickString);
+            }
+            commandIntervals.clear();
+            Enumeration keys = config.keys();
+            while (keys.hasMoreElements()) {
+                String key = (String) keys.nextElement();
+                if (key.startsWith("refresh.")) {
+                    String value = (String) config.get(key);
+                    if (StringUtils.isNotBlank(value)) {
+                        commandIntervals.put(key.substring("refresh.".length()), Long.parseLong(value));
+                    }
+                }
+            }
             setProperlyConfigured(true);
-            logger.debug("Loaded configuration - '" + username + "', refresh: '" + refreshInterval + "'");
+            logger.debug("Loaded configuration - accounts: '{}', refresh: '{}'", accounts.keySet(), refreshInterval);
+            // Intervals and accounts of the items may have changed
+            plansChanged = true;
+            resolveNeeded = true;
+            scheduleResolve();
+        }
+    }
+
+    /**
+     * Creates, reconfigures and removes accounts to match the configuration: the default account from the
+     * plain keys, and an account for each '&lt;name&gt;.username' key.
+     */
+    @SuppressWarnings("rawtypes")
+    private void configureAccounts(Dictionary config, File dataDirectory) {
+        Set<String> names = new HashSet<String>();
+        names.add(WhistleAccount.DEFAULT);
+        Enumeration keys = config.keys();
+        while (keys.hasMoreElements()) {
+            String key = (String) keys.nextElement();
+            if (key.endsWith(".username") && key.indexOf('.') == key.length() - ".username".length()) {
+                names.add(key.substring(0, key.indexOf('.')));
+            }
+        }
+        for (String name : names) {
+            String prefix = WhistleAccount.DEFAULT.equals(name) ? "" : name + ".";
+            Map<String, String> settings = new HashMap<String, String>();
+            for (String setting : WhistleAccount.SETTINGS) {
+                String value = (String) config.get(prefix + setting);
+                // Named accounts inherit the defaults, but not the default account's credentials
+                if (value == null && !"username".equals(setting) && !"password".equals(setting)) {
+                    value = (String) config.get(setting);
+                }
+                if (value != null) {
+                    settings.put(setting, value);
+                }
+            }
+            WhistleAccount account = accounts.get(name);
+            if (account == null) {
+                account = new WhistleAccount(name, metrics);
+                if (transport != null) {
+                    account.setTransport(transport);
+                }
+                accounts.put(name, account);
+            }
+            if (account.configure(settings, dataDirectory)) {
+                verifyBindings(account);
+            }
+        }
+        for (String name : new ArrayList<String>(accounts.keySet())) {
+            if (!names.contains(name)) {
+                logger.debug("Removed account '{}'", name);
+                accounts.remove(name).shutdown();
+            }
         }
     }
 
@@ -392,12 +803,92 @@ public class WhistleBinding extends AbstractActiveBinding<WhistleBindingProvider
         try {
             logger.debug("bindingChanged - '{}'", itemName);
             WhistleGenericBindingProvider WhistleBindingProvider = (WhistleGenericBindingProvider) provider;
-            if (WhistleBindingProvider.providesBindingFor(itemName)) {
-                updateWhistle(WhistleBindingProvider, itemName, false);
+            // Compiled again on first use, and regrouped on the next tick
+            plans.remove(itemName);
+            plansChanged = true;
+            if (!WhistleBindingProvider.providesBindingFor(itemName)) {
+                // Kept until the next resolve batch, in case the item is bound again by a reload
+                removedItems.add(itemName);
+                scheduleResolve();
+            } else if (isUnchanged(WhistleBindingProvider, itemName)) {
+                // Keeps its device, last published value and schedule
+                logger.debug("Binding of item '{}' unchanged", itemName);
+                removedItems.remove(itemName);
+            } else {
+                removedItems.remove(itemName);
+                publishedStates.remove(itemName);
+                // Without requests: the device from the roster as last loaded, the value from the last response
+                if (WhistleBindingProvider.isPending(itemName)) {
+                    activateFromRoster(WhistleBindingProvider, itemName);
+                }
+                boolean published = publishFromCache(WhistleBindingProvider, itemName);
+                if (!published && restore(WhistleBindingProvider, itemName)) {
+                    // Confirm the restored device in the background
+                    scheduleResolve();
+                } else if (!published && WhistleBindingProvider.isPending(itemName)) {
+                    resolveNeeded = true;
+                    scheduleResolve();
+                } else if (!published) {
+                    // Nothing cached yet; fetch on the next tick
+                    WhistleItemPlan plan = getPlan(WhistleBindingProvider, itemName);
+                    WhistleAccount account = getAccount(WhistleBindingProvider, itemName);
+                    if (account != null && plan != null && plan.resource != null) {
+                        account.getScheduler().reset(plan.resource);
+                    }
+                }
             }
             super.bindingChanged(provider, itemName);
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.warn("Failed to update item '{}': {}", itemName, e.toString());
+        }
+    }
+
+    /**
+     * Returns true if the item is still active and has a value published for the same binding key, so it reads
+     * the same value as before.
+     */
+    private boolean isUnchanged(WhistleBindingProvider provider, String itemName) {
+        Published last = publishedStates.get(itemName);
+        if (last == null || provider.isPending(itemName)) {
+            return false;
+        }
+        WhistleItemPlan plan = getPlan(provider, itemName);
+        return plan != null && last.binding.equals(plan.bindingKey);
+    }
+
+    /*
+     * A value published to an item, for which binding key, and when
+     */
+    private static class Published {
+        final String binding;
+        final State state;
+        final long time;
+
+        Published(String binding, State state, long time) {
+            this.binding = binding;
+            this.state = state;
+            this.time = time;
+        }
+    }
+
+    /*
+     * The fetch of a resource of an account, publishing to the items reading from it
+     */
+    private class ResourceFetch implements Callable<Void> {
+        final WhistleAccount account;
+        final String resource;
+        final List<WhistleItemPlan> items;
+
+        ResourceFetch(WhistleAccount account, String resource, List<WhistleItemPlan> items) {
+            this.account = account;
+            this.resource = resource;
+            this.items = items;
+        }
+
+        @Override
+        public Void call() {
+            refreshResource(account, resource, items);
+            return null;
         }
     }
 }
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops requests to the Whistle API while it is failing. After the configured
+ * number of consecutive failures the circuit opens and requests are rejected
+ * without being sent. Once the backoff has passed, a single probe request is
+ * let through: if it succeeds the circuit closes again, otherwise it reopens
+ * with twice the backoff, up to the maximum. A random jitter of up to a quarter
+ * of the backoff keeps clients from retrying in lockstep.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleCircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleCircuitBreaker.class);
+
+    static final int DEFAULT_THRESHOLD = 5;
+    static final long DEFAULT_BACKOFF = 30000L;
+    static final long DEFAULT_MAX_BACKOFF = 1800000L;
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Random random = new Random();
+    private int threshold = DEFAULT_THRESHOLD;
+    private long initialBackoff = DEFAULT_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long backoff;
+    private long openUntil;
+    private boolean probing;
+
+    synchronized void configure(int threshold, long initialBackoff, long maxBackoff) {
+        this.threshold = Math.max(1, threshold);
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = Math.max(initialBackoff, maxBackoff);
+    }
+
+    /**
+     * Returns true if a request may be sent now. In the half open state only
+     * one probe is allowed at a time.
+     */
+    synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() < openUntil) {
+                    return false;
+                }
+                logger.debug("Probing the Whistle API");
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    /**
+     * Gives back a request allowed by {@link #allowRequest()} that wasn't
+     * sent, so a probe is let through again.
+     */
+    synchronized void cancelRequest() {
+        probing = false;
+    }
+
+    synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Whistle API is available again");
+        }
+        state = State.CLOSED;
+        failures = 0;
+        backoff = 0;
+        probing = false;
+    }
+
+    synchronized void recordFailure() {
+        failures++;
+        probing = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= threshold)) {
+            backoff = backoff == 0 ? initialBackoff : Math.min(backoff * 2, maxBackoff);
+            long jitter = (long) (random.nextDouble() * backoff / 4);
+            openUntil = System.currentTimeMillis() + backoff + jitter;
+            state = State.OPEN;
+            logger.warn("Whistle API failed {} times in a row, pausing requests for {} s", failures,
+                    (backoff + jitter) / 1000);
+        }
+    }
+}
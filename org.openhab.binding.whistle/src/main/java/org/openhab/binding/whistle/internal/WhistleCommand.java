@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+/**
+ * The commands of the binding configuration, with the resource each reads
+ * from and the parser of its response.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+enum WhistleCommand {
+    ACTIVITY("activity", WhistleJsonParser.DAILIES),
+    TARGET("target", WhistleJsonParser.DAILIES),
+    DEVICE("device", WhistleJsonParser.DEVICE),
+    DOG("dog", WhistleJsonParser.DOGS),
+    GOALS("goals", WhistleJsonParser.GOALS),
+    AVERAGE_ACTIVE("averageactive", WhistleJsonParser.DAILY_TOTALS),
+    AVERAGE_REST("averagerest", WhistleJsonParser.DAILY_TOTALS),
+    // Rolling aggregates of the dailies, so they cost no requests of their own
+    MIN_ACTIVE("minactive", WhistleJsonParser.DAILIES),
+    MAX_ACTIVE("maxactive", WhistleJsonParser.DAILIES),
+    MEDIAN_ACTIVE("medianactive", WhistleJsonParser.DAILIES),
+    P90_ACTIVE("p90active", WhistleJsonParser.DAILIES),
+    GOAL_RATE("goalrate", WhistleJsonParser.DAILIES),
+    TREND("trend", WhistleJsonParser.DAILIES),
+    // Metrics of the binding, published at the end of each cycle instead of read from a resource
+    METRICS("metrics", null);
+
+    // As written in the binding configuration
+    final String key;
+    final WhistleHttpClient.ResponseHandler<?> parser;
+
+    private WhistleCommand(String key, WhistleHttpClient.ResponseHandler<?> parser) {
+        this.key = key;
+        this.parser = parser;
+    }
+
+    /**
+     * Returns the command written as the key, or null if there is none.
+     */
+    static WhistleCommand of(String key) {
+        for (WhistleCommand command : values()) {
+            if (command.key.equals(key)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the command reads daily records, which are synced into a
+     * local store, and its parameter is a number of days.
+     */
+    boolean isDaily() {
+        return parser == WhistleJsonParser.DAILIES || parser == WhistleJsonParser.DAILY_TOTALS;
+    }
+
+    /**
+     * Returns true if the command's value is an aggregate over the N days
+     * before today, so it needs at least one day.
+     */
+    boolean isAggregate() {
+        return isDaily() && this != ACTIVITY && this != TARGET;
+    }
+
+    /**
+     * Returns true if the command's items stay pending until their dog's device
+     * has been found. Dog profiles are listed whether or not a device is
+     * paired, and metrics aren't of a dog at all.
+     */
+    boolean needsDevice() {
+        return this != DOG && this != METRICS;
+    }
+
+    /**
+     * Returns the number of days up to and including today the command needs
+     * stored for its parameter of N days.
+     */
+    int getHistoryDays(int days) {
+        // The trend compares the N days before today with the N days before those
+        return this == TREND ? 2 * days + 1 : days + 1;
+    }
+
+    /**
+     * Returns the API resource read for the dog, relative to the API root,
+     * or null if the command reads none.
+     */
+    String getResource(String dogID, String deviceID) {
+        switch (this) {
+            case ACTIVITY:
+            case TARGET:
+            case MIN_ACTIVE:
+            case MAX_ACTIVE:
+            case MEDIAN_ACTIVE:
+            case P90_ACTIVE:
+            case GOAL_RATE:
+            case TREND:
+                return "dogs/" + dogID + "/dailies";
+            case DEVICE:
+                return "devices/" + deviceID + ".json";
+            case DOG:
+                // The profiles of all of the account's dogs come in one response
+                return "dogs.json";
+            case GOALS:
+                return "dogs/" + dogID + "/stats/goals";
+            case AVERAGE_ACTIVE:
+            case AVERAGE_REST:
+                return "dogs/" + dogID + "/stats/daily_totals";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Duration, requests and published items of the refresh cycles.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleCycleMetrics implements WhistleCycleMetricsMBean {
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong itemsPublished = new AtomicLong();
+    private volatile long lastMillis;
+    private volatile long maxMillis;
+    private volatile long lastItemsPublished;
+    private volatile long lastRequests;
+
+    /**
+     * Counts an item update, whether or not a cycle is running.
+     */
+    void itemPublished() {
+        itemsPublished.incrementAndGet();
+    }
+
+    /**
+     * Records a completed cycle. Only called by the refresh thread.
+     */
+    void record(long millis, long items, long requests) {
+        cycles.incrementAndGet();
+        totalMillis.addAndGet(millis);
+        lastMillis = millis;
+        maxMillis = Math.max(maxMillis, millis);
+        lastItemsPublished = items;
+        lastRequests = requests;
+    }
+
+    @Override
+    public long getCycleCount() {
+        return cycles.get();
+    }
+
+    @Override
+    public long getLastDurationMillis() {
+        return lastMillis;
+    }
+
+    @Override
+    public long getMaxDurationMillis() {
+        return maxMillis;
+    }
+
+    @Override
+    public double getMeanDurationMillis() {
+        long count = cycles.get();
+        return count > 0 ? (double) totalMillis.get() / count : 0;
+    }
+
+    @Override
+    public long getLastItemsPublished() {
+        return lastItemsPublished;
+    }
+
+    @Override
+    public long getLastRequests() {
+        return lastRequests;
+    }
+
+    @Override
+    public long getItemsPublished() {
+        return itemsPublished.get();
+    }
+
+    @Override
+    public void reset() {
+        cycles.set(0);
+        totalMillis.set(0);
+        itemsPublished.set(0);
+        lastMillis = 0;
+        maxMillis = 0;
+        lastItemsPublished = 0;
+        lastRequests = 0;
+    }
+}
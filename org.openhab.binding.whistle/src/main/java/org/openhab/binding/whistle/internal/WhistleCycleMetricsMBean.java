@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+/**
+ * Refresh cycles of the binding, as seen over JMX.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public interface WhistleCycleMetricsMBean {
+    long getCycleCount();
+
+    long getLastDurationMillis();
+
+    long getMaxDurationMillis();
+
+    double getMeanDurationMillis();
+
+    /**
+     * Item updates published by the last cycle.
+     */
+    long getLastItemsPublished();
+
+    /**
+     * Requests sent by the last cycle.
+     */
+    long getLastRequests();
+
+    /**
+     * Item updates published since the binding started.
+     */
+    long getItemsPublished();
+
+    void reset();
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.Arrays;
+
+/**
+ * Daily records of a dog, as returned by the <code>dailies</code> and
+ * <code>stats/daily_totals</code> endpoints, held in primitive columns in the
+ * order they were received.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleDailies {
+    // Day number of records without a day_number field
+    static final int NO_DAY = -1;
+
+    private int size;
+    private int[] dayNumber;
+    private int[] minutesActive;
+    private int[] minutesRest;
+    private int[] activityGoal;
+
+    WhistleDailies() {
+        this(16);
+    }
+
+    WhistleDailies(int capacity) {
+        dayNumber = new int[capacity];
+        minutesActive = new int[capacity];
+        minutesRest = new int[capacity];
+        activityGoal = new int[capacity];
+    }
+
+    void add(int day, int active, int rest, int goal) {
+        if (size == dayNumber.length) {
+            int capacity = Math.max(16, size * 2);
+            dayNumber = Arrays.copyOf(dayNumber, capacity);
+            minutesActive = Arrays.copyOf(minutesActive, capacity);
+            minutesRest = Arrays.copyOf(minutesRest, capacity);
+            activityGoal = Arrays.copyOf(activityGoal, capacity);
+        }
+        dayNumber[size] = day;
+        minutesActive[size] = active;
+        minutesRest[size] = rest;
+        activityGoal[size] = goal;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getDayNumber(int index) {
+        return dayNumber[index];
+    }
+
+    int getMinutesActive(int index) {
+        return minutesActive[index];
+    }
+
+    int getMinutesRest(int index) {
+        return minutesRest[index];
+    }
+
+    int getActivityGoal(int index) {
+        return activityGoal[index];
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local copy of the daily records of one dog and endpoint, indexed by day
+ * number (days since epoch). Past days don't change, so after the initial
+ * download only the days since the last sync are fetched again. Sums over day
+ * ranges are answered from prefix sums, so an N day average costs the same
+ * whatever N is. Percentiles and goal hit-rates over the last N days come from
+ * rolling windows, which only count the days entering and leaving them.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleDailyStore {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleDailyStore.class);
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    // Day number of index 0
+    private int firstDay;
+    private int size;
+    private boolean[] present = new boolean[0];
+    private int[] minutesActive = new int[0];
+    private int[] minutesRest = new int[0];
+    private int[] activityGoal = new int[0];
+    // prefix[i] is the sum over the indexes below i; valid below prefixValid
+    private long[] prefixActive = new long[1];
+    private long[] prefixRest = new long[1];
+    private int[] prefixCount = new int[1];
+    private int prefixValid;
+    // Last day fetched from the API; it may have been incomplete at the time
+    private int syncedThrough = -1;
+    // First day of the earliest sync; the store is complete from there
+    private int syncedFrom = Integer.MAX_VALUE;
+    private int requiredDays = 1;
+    // Rolling windows by number of days, kept in step with the records
+    private final List<WhistleDailyWindow> windows = new ArrayList<WhistleDailyWindow>(2);
+
+    /**
+     * Returns today's day number.
+     */
+    static int today() {
+        return (int) (System.currentTimeMillis() / MILLIS_PER_DAY);
+    }
+
+    /**
+     * Returns the UTC date of the day number as yyyy-MM-dd, computed from the
+     * proleptic Gregorian calendar instead of through a date format.
+     */
+    static String formatDate(int day) {
+        // Days since 0000-03-01, so the leap day ends each 400 year era
+        int days = day + 719468;
+        int era = (days >= 0 ? days : days - 146096) / 146097;
+        int dayOfEra = days - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthFromMarch = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = dayOfYear - (153 * monthFromMarch + 2) / 5 + 1;
+        int month = monthFromMarch < 10 ? monthFromMarch + 3 : monthFromMarch - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        StringBuilder date = new StringBuilder(10);
+        date.append(year).append(month < 10 ? "-0" : "-").append(month).append(dayOfMonth < 10 ? "-0" : "-")
+                .append(dayOfMonth);
+        return date.toString();
+    }
+
+    /**
+     * Makes sure the next sync covers at least the given number of days up to
+     * and including today.
+     */
+    synchronized void requireDays(int days) {
+        requiredDays = Math.max(requiredDays, days);
+    }
+
+    /**
+     * Returns the first day the next sync has to fetch: the last synced day,
+     * which may have changed since, or the start of the required history if it
+     * hasn't been synced yet. Days without records within a synced range, e.g.
+     * before the dog's first day, aren't fetched again.
+     */
+    synchronized int getSyncStartDay(int today) {
+        int historyStart = today - requiredDays + 1;
+        if (syncedThrough < 0 || syncedFrom > historyStart) {
+            return historyStart;
+        }
+        return Math.min(syncedThrough, today);
+    }
+
+    /**
+     * Stores records fetched for the days from <code>startDay</code> through
+     * <code>today</code>, dating records without a day number as
+     * {@link #getDay(WhistleDailies, int, int, int)} does.
+     */
+    synchronized void merge(WhistleDailies dailies, int startDay, int today) {
+        // Make room for the whole range at once
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int i = 0; i < dailies.size(); i++) {
+            int day = getDay(dailies, i, startDay, today);
+            if (day != WhistleDailies.NO_DAY) {
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+            }
+        }
+        if (minDay <= maxDay) {
+            if (size == 0) {
+                firstDay = minDay;
+            }
+            ensureRange(minDay);
+            ensureRange(maxDay);
+        }
+        for (int i = 0; i < dailies.size(); i++) {
+            int day = getDay(dailies, i, startDay, today);
+            if (day != WhistleDailies.NO_DAY) {
+                put(day, dailies.getMinutesActive(i), dailies.getMinutesRest(i), dailies.getActivityGoal(i));
+            } else {
+                logger.debug("Dropping record '{}' without day number, past day '{}'", i, today);
+            }
+        }
+        syncedThrough = Math.max(syncedThrough, today);
+        syncedFrom = Math.min(syncedFrom, startDay);
+    }
+
+    /**
+     * Returns the day of the record at the index of a response listing the
+     * days from <code>startDay</code> through <code>endDay</code>. Records
+     * without a day number are counted as consecutive days from
+     * <code>startDay</code> on, as a request from a start date lists the
+     * oldest day first. Returns {@link WhistleDailies#NO_DAY} for those past
+     * <code>endDay</code>, which can't be dated.
+     */
+    static int getDay(WhistleDailies dailies, int index, int startDay, int endDay) {
+        int day = dailies.getDayNumber(index);
+        if (day != WhistleDailies.NO_DAY) {
+            return day;
+        }
+        return startDay + index <= endDay ? startDay + index : WhistleDailies.NO_DAY;
+    }
+
+    /**
+     * Returns true if the store has been synced from <code>fromDay</code>
+     * on, so values over the days since can be derived from it.
+     */
+    synchronized boolean isSyncedFrom(int fromDay) {
+        return syncedFrom <= fromDay;
+    }
+
+    synchronized boolean has(int day) {
+        int index = day - firstDay;
+        return index >= 0 && index < size && present[index];
+    }
+
+    synchronized int getMinutesActive(int day) {
+        return has(day) ? minutesActive[day - firstDay] : 0;
+    }
+
+    synchronized int getMinutesRest(int day) {
+        return has(day) ? minutesRest[day - firstDay] : 0;
+    }
+
+    synchronized int getActivityGoal(int day) {
+        return has(day) ? activityGoal[day - firstDay] : 0;
+    }
+
+    /**
+     * Sum of the active minutes from <code>fromDay</code> through
+     * <code>toDay</code>.
+     */
+    synchronized long sumMinutesActive(int fromDay, int toDay) {
+        return rangeSum(prefixActive, fromDay, toDay);
+    }
+
+    /**
+     * Sum of the rest minutes from <code>fromDay</code> through
+     * <code>toDay</code>.
+     */
+    synchronized long sumMinutesRest(int fromDay, int toDay) {
+        return rangeSum(prefixRest, fromDay, toDay);
+    }
+
+    /**
+     * Number of stored days from <code>fromDay</code> through <code>toDay</code>.
+     */
+    synchronized int countDays(int fromDay, int toDay) {
+        int[] range = clamp(fromDay, toDay);
+        if (range == null) {
+            return 0;
+        }
+        updatePrefixSums();
+        return prefixCount[range[1] + 1] - prefixCount[range[0]];
+    }
+
+    /**
+     * Active minutes at the given nearest-rank percentile of the stored days
+     * among the <code>days</code> days before <code>today</code>: 0 is the
+     * minimum, 50 the median and 100 the maximum. Returns -1 if none of those
+     * days are stored.
+     */
+    synchronized int getActivePercentile(int days, int today, int percent) {
+        return getWindow(days, today).getPercentile(percent);
+    }
+
+    /**
+     * Percentage of the stored days among the <code>days</code> days before
+     * <code>today</code> on which the activity goal was met, or -1 if none of
+     * those days are stored.
+     */
+    synchronized int getGoalRate(int days, int today) {
+        return getWindow(days, today).getGoalRate();
+    }
+
+    // The window of the number of days, moved on to end yesterday
+    private WhistleDailyWindow getWindow(int days, int today) {
+        WhistleDailyWindow window = null;
+        for (int i = 0; i < windows.size() && window == null; i++) {
+            if (windows.get(i).days == days) {
+                window = windows.get(i);
+            }
+        }
+        if (window == null) {
+            window = new WhistleDailyWindow(days);
+            windows.add(window);
+        }
+        int from = today - days;
+        int to = today - 1;
+        if (from < window.from || from > window.to) {
+            // Nothing to keep; count the window from scratch
+            window.from = from;
+            window.clear();
+        }
+        // Days leave at the start and enter at the end, each once
+        for (; window.from < from; window.from++) {
+            count(window, window.from, -1);
+        }
+        while (window.to < to) {
+            window.to++;
+            count(window, window.to, 1);
+        }
+        return window;
+    }
+
+    private void count(WhistleDailyWindow window, int day, int sign) {
+        if (has(day)) {
+            window.add(minutesActive[day - firstDay], activityGoal[day - firstDay], sign);
+        }
+    }
+
+    private long rangeSum(long[] prefix, int fromDay, int toDay) {
+        int[] range = clamp(fromDay, toDay);
+        if (range == null) {
+            return 0;
+        }
+        updatePrefixSums();
+        return prefix[range[1] + 1] - prefix[range[0]];
+    }
+
+    // Index range of the stored days within the given days, or null if there are none
+    private int[] clamp(int fromDay, int toDay) {
+        int from = Math.max(fromDay - firstDay, 0);
+        int to = Math.min(toDay - firstDay, size - 1);
+        return from <= to ? new int[] { from, to } : null;
+    }
+
+    private void put(int day, int active, int rest, int goal) {
+        int index = day - firstDay;
+        for (int i = 0; i < windows.size(); i++) {
+            WhistleDailyWindow window = windows.get(i);
+            if (window.covers(day)) {
+                // A day synced again replaces its earlier, possibly incomplete record
+                if (present[index]) {
+                    window.add(minutesActive[index], activityGoal[index], -1);
+                }
+                window.add(active, goal, 1);
+            }
+        }
+        present[index] = true;
+        minutesActive[index] = active;
+        minutesRest[index] = rest;
+        activityGoal[index] = goal;
+        size = Math.max(size, index + 1);
+        prefixValid = Math.min(prefixValid, index);
+    }
+
+    // Grows the columns so the day can be stored, moving the data up if the day is before the first day
+    private void ensureRange(int day) {
+        int shift = Math.max(firstDay - day, 0);
+        int needed = Math.max(size + shift, day - firstDay + shift + 1);
+        if (shift == 0 && needed <= present.length) {
+            return;
+        }
+        int capacity = needed <= present.length ? present.length
+                : Math.max(needed, present.length + present.length / 2 + 8);
+        present = grow(present, shift, capacity);
+        minutesActive = grow(minutesActive, shift, capacity);
+        minutesRest = grow(minutesRest, shift, capacity);
+        activityGoal = grow(activityGoal, shift, capacity);
+        prefixActive = Arrays.copyOf(prefixActive, capacity + 1);
+        prefixRest = Arrays.copyOf(prefixRest, capacity + 1);
+        prefixCount = Arrays.copyOf(prefixCount, capacity + 1);
+        if (shift > 0) {
+            firstDay -= shift;
+            size += shift;
+            prefixValid = 0;
+        }
+    }
+
+    private boolean[] grow(boolean[] column, int shift, int capacity) {
+        boolean[] grown = new boolean[capacity];
+        System.arraycopy(column, 0, grown, shift, size);
+        return grown;
+    }
+
+    private int[] grow(int[] column, int shift, int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(column, 0, grown, shift, size);
+        return grown;
+    }
+
+    // Recomputes the prefix sums from the first index changed since the last query
+    private void updatePrefixSums() {
+        for (int i = prefixValid; i < size; i++) {
+            prefixActive[i + 1] = prefixActive[i] + minutesActive[i];
+            prefixRest[i + 1] = prefixRest[i] + minutesRest[i];
+            prefixCount[i + 1] = prefixCount[i] + (present[i] ? 1 : 0);
+        }
+        prefixValid = size;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.Arrays;
+
+/**
+ * Rolling aggregates of the active minutes over a window of N days. The
+ * minutes of the days in the window are counted in a Fenwick tree over the
+ * minutes of a day, so any percentile, including the minimum and maximum, is
+ * found in O(log 1440). Adding or removing a day is O(log 1440) too, so the
+ * window follows the days without summing them again.
+ * <p>
+ * Not thread-safe; the {@link WhistleDailyStore} owning it keeps it in step
+ * with its records.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleDailyWindow {
+    // Active minutes of a day are counted from 0 through MAX_MINUTES
+    static final int MAX_MINUTES = 24 * 60;
+    // Highest power of two not above the tree size, to search the tree top down
+    private static final int TOP_STEP = Integer.highestOneBit(MAX_MINUTES + 1);
+
+    final int days;
+    // Days counted, from <code>from</code> through <code>to</code>; empty while to is below from
+    int from;
+    int to = -1;
+    // tree[i] counts the days of a range of minutes ending at minutes i - 1
+    private final int[] tree = new int[MAX_MINUTES + 2];
+    private int count;
+    private int goalHits;
+
+    WhistleDailyWindow(int days) {
+        this.days = days;
+    }
+
+    /**
+     * Adds a day to the counts, or removes it if <code>sign</code> is -1.
+     */
+    void add(int minutesActive, int activityGoal, int sign) {
+        int minutes = Math.max(0, Math.min(minutesActive, MAX_MINUTES));
+        for (int i = minutes + 1; i < tree.length; i += i & -i) {
+            tree[i] += sign;
+        }
+        count += sign;
+        if (activityGoal > 0 && minutesActive >= activityGoal) {
+            goalHits += sign;
+        }
+    }
+
+    /**
+     * Forgets all days.
+     */
+    void clear() {
+        Arrays.fill(tree, 0);
+        count = 0;
+        goalHits = 0;
+        to = from - 1;
+    }
+
+    /**
+     * Returns true if the day is counted in the window.
+     */
+    boolean covers(int day) {
+        return day >= from && day <= to;
+    }
+
+    /**
+     * Number of days with records in the window.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the active minutes at the given nearest-rank percentile of the
+     * days in the window: 0 is the minimum, 50 the median and 100 the maximum.
+     * Returns -1 if the window has no days.
+     */
+    int getPercentile(int percent) {
+        if (count == 0) {
+            return -1;
+        }
+        // Rank of the day, from 1; ceil(percent * count / 100)
+        int rank = Math.max(1, (int) (((long) percent * count + 99) / 100));
+        // Finds the largest index whose prefix count is below the rank; its minutes are the answer
+        int index = 0;
+        int remaining = rank;
+        for (int step = TOP_STEP; step > 0; step >>= 1) {
+            int next = index + step;
+            if (next < tree.length && tree[next] < remaining) {
+                index = next;
+                remaining -= tree[next];
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Percentage of the days in the window on which the activity goal was met,
+     * or -1 if the window has no days.
+     */
+    int getGoalRate() {
+        return count == 0 ? -1 : (int) ((goalHits * 100L + count / 2) / count);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request count, errors, bytes and a latency histogram of one endpoint. The
+ * histogram has fixed buckets, so recording a request never allocates.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleEndpointMetrics implements WhistleEndpointMetricsMBean {
+    // Upper bounds of the buckets; the last one takes everything slower
+    private static final long[] BUCKETS = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000,
+            Long.MAX_VALUE };
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length);
+
+    /**
+     * Records a completed request.
+     */
+    void record(long nanos, boolean failed) {
+        requests.incrementAndGet();
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (millis > BUCKETS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    void addBytes(long count) {
+        bytes.addAndGet(count);
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        long count = requests.get();
+        return count > 0 ? totalNanos.get() / 1e6 / count : 0;
+    }
+
+    @Override
+    public long getLatencyP50Millis() {
+        return getPercentile(0.5);
+    }
+
+    @Override
+    public long getLatencyP99Millis() {
+        return getPercentile(0.99);
+    }
+
+    @Override
+    public long getLatencyMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    @Override
+    public long[] getLatencyBucketMillis() {
+        return BUCKETS.clone();
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[BUCKETS.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        requests.set(0);
+        errors.set(0);
+        bytes.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        for (int i = 0; i < BUCKETS.length; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    // Upper bound of the bucket holding the percentile; the maximum if that is the last bucket
+    private long getPercentile(double fraction) {
+        long[] counts = getLatencyHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i < BUCKETS.length - 1 ? BUCKETS[i] : getLatencyMaxMillis();
+            }
+        }
+        return getLatencyMaxMillis();
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+/**
+ * Requests to one Whistle API endpoint, as seen over JMX.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+public interface WhistleEndpointMetricsMBean {
+    long getRequestCount();
+
+    /**
+     * Requests that failed or were answered with an error status.
+     */
+    long getErrorCount();
+
+    /**
+     * Response bytes as received, before decompression.
+     */
+    long getBytes();
+
+    double getLatencyMeanMillis();
+
+    /**
+     * Upper bound of the latency of half of the requests, in milliseconds.
+     */
+    long getLatencyP50Millis();
+
+    /**
+     * Upper bound of the latency of 99% of the requests, in milliseconds.
+     */
+    long getLatencyP99Millis();
+
+    long getLatencyMaxMillis();
+
+    /**
+     * Upper bounds of the latency histogram buckets, in milliseconds.
+     */
+    long[] getLatencyBucketMillis();
+
+    /**
+     * Number of requests in each latency histogram bucket.
+     */
+    long[] getLatencyHistogram();
+
+    void reset();
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.DateTimeItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * The values an item can be bound to, each with the type of item it needs and
+ * how it is extracted from the parsed response of its command's resource.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+enum WhistleField {
+    // Active minutes and goal N days ago, where today is day 0
+    ACTIVE_MINUTES(WhistleCommand.ACTIVITY, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleDailyStore store = (WhistleDailyStore) data;
+            int day = WhistleDailyStore.today() - plan.days;
+            return store.has(day) ? new DecimalType(store.getMinutesActive(day)) : null;
+        }
+    },
+    ACTIVITY_GOAL(WhistleCommand.TARGET, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleDailyStore store = (WhistleDailyStore) data;
+            int day = WhistleDailyStore.today() - plan.days;
+            return store.has(day) ? new DecimalType(store.getActivityGoal(day)) : null;
+        }
+    },
+    // Aggregates of the N days before today, as today's data is incomplete; days without a record don't count
+    AVERAGE_ACTIVE(WhistleCommand.AVERAGE_ACTIVE, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleDailyStore store = (WhistleDailyStore) data;
+            int today = WhistleDailyStore.today();
+            int count = store.countDays(today - plan.days, today - 1);
+            return count > 0 ? new DecimalType(store.sumMinutesActive(today - plan.days, today - 1) / count) : null;
+        }
+    },
+    AVERAGE_REST(WhistleCommand.AVERAGE_REST, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleDailyStore store = (WhistleDailyStore) data;
+            int today = WhistleDailyStore.today();
+            int count = store.countDays(today - plan.days, today - 1);
+            return count > 0 ? new DecimalType(store.sumMinutesRest(today - plan.days, today - 1) / count) : null;
+        }
+    },
+    MIN_ACTIVE(WhistleCommand.MIN_ACTIVE, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return getActivePercentile(plan, data, 0);
+        }
+    },
+    MAX_ACTIVE(WhistleCommand.MAX_ACTIVE, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return getActivePercentile(plan, data, 100);
+        }
+    },
+    MEDIAN_ACTIVE(WhistleCommand.MEDIAN_ACTIVE, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return getActivePercentile(plan, data, 50);
+        }
+    },
+    P90_ACTIVE(WhistleCommand.P90_ACTIVE, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return getActivePercentile(plan, data, 90);
+        }
+    },
+    // Percentage of the days the activity goal was met
+    GOAL_RATE(WhistleCommand.GOAL_RATE, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            int rate = ((WhistleDailyStore) data).getGoalRate(plan.days, WhistleDailyStore.today());
+            return rate >= 0 ? new DecimalType(rate) : null;
+        }
+    },
+    // Change in percent of the average active minutes of the N days before today over the N days before those,
+    // e.g. week over week for 7
+    TREND(WhistleCommand.TREND, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleDailyStore store = (WhistleDailyStore) data;
+            int today = WhistleDailyStore.today();
+            int lastFrom = today - plan.days;
+            int previousFrom = lastFrom - plan.days;
+            int lastCount = store.countDays(lastFrom, today - 1);
+            int previousCount = store.countDays(previousFrom, lastFrom - 1);
+            long previousSum = store.sumMinutesActive(previousFrom, lastFrom - 1);
+            if (lastCount == 0 || previousCount == 0 || previousSum == 0) {
+                return null;
+            }
+            double last = (double) store.sumMinutesActive(lastFrom, today - 1) / lastCount;
+            double previous = (double) previousSum / previousCount;
+            return new DecimalType(BigDecimal.valueOf((last - previous) * 100 / previous).setScale(1,
+                    RoundingMode.HALF_UP));
+        }
+    },
+    CURRENT_STREAK(WhistleCommand.GOALS, "current", NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return new DecimalType(((WhistleJsonParser.Goals) data).currentStreak);
+        }
+    },
+    LONGEST_STREAK(WhistleCommand.GOALS, "longest", NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return new DecimalType(((WhistleJsonParser.Goals) data).longestStreak);
+        }
+    },
+    BATTERY(WhistleCommand.DEVICE, "battery", NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            // Round battery level to 2 decimal places, the same in every locale
+            return new DecimalType(BigDecimal.valueOf(((WhistleJsonParser.Device) data).batteryLevel).setScale(2,
+                    RoundingMode.HALF_UP));
+        }
+    },
+    BATTERY_STATUS(WhistleCommand.DEVICE, "batterystatus", StringItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return toStringType(((WhistleJsonParser.Device) data).batteryStatus);
+        }
+    },
+    CHARGING(WhistleCommand.DEVICE, "charging", SwitchItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            String status = ((WhistleJsonParser.Device) data).batteryStatus;
+            return status == null ? null : "charging".equalsIgnoreCase(status) ? OnOffType.ON : OnOffType.OFF;
+        }
+    },
+    LAST_CHECK_IN(WhistleCommand.DEVICE, "lastcheckin", DateTimeItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return toDateTimeType(((WhistleJsonParser.Device) data).lastCheckIn);
+        }
+    },
+    SERIAL(WhistleCommand.DEVICE, "serial", StringItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return toStringType(((WhistleJsonParser.Device) data).serialNumber);
+        }
+    },
+    FIRMWARE(WhistleCommand.DEVICE, "firmware", StringItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return toStringType(((WhistleJsonParser.Device) data).firmwareVersion);
+        }
+    },
+    WIFI(WhistleCommand.DEVICE, "wifi", StringItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return toStringType(((WhistleJsonParser.Device) data).wifiSsid);
+        }
+    },
+    RSSI(WhistleCommand.DEVICE, "rssi", NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            BigDecimal rssi = ((WhistleJsonParser.Device) data).wifiRssi;
+            return rssi != null ? new DecimalType(rssi) : null;
+        }
+    },
+    NAME(WhistleCommand.DOG, "name", StringItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleRoster.Dog dog = findDog(data, plan.dogID);
+            return dog != null ? toStringType(dog.name) : null;
+        }
+    },
+    BREED(WhistleCommand.DOG, "breed", StringItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleRoster.Dog dog = findDog(data, plan.dogID);
+            return dog != null ? toStringType(dog.breed) : null;
+        }
+    },
+    GENDER(WhistleCommand.DOG, "gender", StringItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleRoster.Dog dog = findDog(data, plan.dogID);
+            return dog != null ? toStringType(dog.gender) : null;
+        }
+    },
+    WEIGHT(WhistleCommand.DOG, "weight", NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleRoster.Dog dog = findDog(data, plan.dogID);
+            return dog != null && dog.weight != null ? new DecimalType(dog.weight) : null;
+        }
+    },
+    BIRTHDAY(WhistleCommand.DOG, "birthday", DateTimeItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            WhistleRoster.Dog dog = findDog(data, plan.dogID);
+            return dog != null ? toDateTimeType(dog.birthday) : null;
+        }
+    },
+    // Any metric; published from the metrics instead of extracted from a response
+    METRIC(WhistleCommand.METRICS, null, NumberItem.class) {
+        @Override
+        State extract(WhistleItemPlan plan, Object data) {
+            return null;
+        }
+    };
+
+    final WhistleCommand command;
+    // The parameter selecting the field, or null if the command has only this field
+    final String key;
+    final Class<? extends Item> itemType;
+
+    private WhistleField(WhistleCommand command, String key, Class<? extends Item> itemType) {
+        this.command = command;
+        this.key = key;
+        this.itemType = itemType;
+    }
+
+    /**
+     * Returns the item's value from the response of its resource, or null if
+     * the response doesn't have it.
+     */
+    abstract State extract(WhistleItemPlan plan, Object data);
+
+    /**
+     * Returns the field of the command selected by the parameter, or null if
+     * there is none.
+     */
+    static WhistleField of(WhistleCommand command, String parameter) {
+        for (WhistleField field : values()) {
+            if (field.command == command && (field.key == null || field.key.equals(parameter))) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private static State getActivePercentile(WhistleItemPlan plan, Object data, int percent) {
+        int minutes = ((WhistleDailyStore) data).getActivePercentile(plan.days, WhistleDailyStore.today(), percent);
+        return minutes >= 0 ? new DecimalType(minutes) : null;
+    }
+
+    private static State toStringType(String value) {
+        return value != null ? new StringType(value) : null;
+    }
+
+    private static State toDateTimeType(Date value) {
+        if (value == null) {
+            return null;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(value);
+        return new DateTimeType(calendar);
+    }
+
+    private static WhistleRoster.Dog findDog(Object data, String dogID) {
+        @SuppressWarnings("unchecked")
+        List<WhistleRoster.Dog> dogs = (List<WhistleRoster.Dog>) data;
+        for (int i = 0; i < dogs.size(); i++) {
+            if (dogs.get(i).id.equals(dogID)) {
+                return dogs.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -8,10 +8,14 @@
  */
 package org.openhab.binding.whistle.internal;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 import org.openhab.binding.whistle.WhistleBindingProvider;
 import org.openhab.core.binding.BindingConfig;
 import org.openhab.core.items.Item;
-import org.openhab.core.library.items.NumberItem;
 import org.openhab.model.item.binding.AbstractGenericBindingProvider;
 import org.openhab.model.item.binding.BindingConfigParseException;
 import org.slf4j.Logger;
@@ -31,14 +35,46 @@ import org.slf4j.LoggerFactory;
  * <li><code>{ whistle="100000:activity:7" }</code>
  * <li><code>{ whistle="100000:goals:current" }</code>
  * <li><code>{ whistle="100000:goals:longest" }</code>
+ * <li><code>{ whistle="100000:device:battery:3600" }</code> (refreshed every 3600 seconds)
+ * <li><code>{ whistle="100000:device:lastcheckin" }</code> (DateTime item)
+ * <li><code>{ whistle="100000:device:firmware" }</code> (String item; also <code>batterystatus</code>,
+ * <code>serial</code> and <code>wifi</code>)
+ * <li><code>{ whistle="100000:device:charging" }</code> (Switch item; also <code>rssi</code> on a Number item)
+ * <li><code>{ whistle="100000:dog:name" }</code> (String item; also <code>breed</code> and <code>gender</code>,
+ * <code>weight</code> on a Number item and <code>birthday</code> on a DateTime item)
+ * <li><code>{ whistle="100000:medianactive:30" }</code> (active minutes over the 30 days before today; also
+ * <code>minactive</code>, <code>maxactive</code> and <code>p90active</code>)
+ * <li><code>{ whistle="100000:goalrate:30" }</code> (percentage of the 30 days before today the goal was met)
+ * <li><code>{ whistle="100000:trend:7" }</code> (change in percent of the average active minutes, week over
+ * week)
+ * <li><code>{ whistle="100000@family:device:battery" }</code> (dog of the account 'family')
+ * <li><code>{ whistle="100000:device:battery:deadband=0.5" }</code> (only published on changes above 0.5)
+ * <li><code>{ whistle="100000:averageactive:7:3600:deadband=5%:republish=86400" }</code> (only published on
+ * changes above 5%, but at least once a day)
  * </ul>
  *
+ * <p>
+ * All fields of a device are read from one response per refresh, and all
+ * dog profiles from one response per account. The rolling aggregates of
+ * active minutes are derived from the same daily records as
+ * <code>activity</code>, without requests of their own.
+ * </p>
+ *
+ * <p>
+ * When an items file is reloaded, an item whose dog and account are unchanged
+ * keeps the device it was bound to, so it doesn't need to be resolved again.
+ * </p>
+ *
  * @author John Jore
  * @since 0.8.0
  */
 public class WhistleGenericBindingProvider extends AbstractGenericBindingProvider implements WhistleBindingProvider {
     private static Logger logger = LoggerFactory.getLogger(WhistleActivator.class);
 
+    // Context being reloaded, and the previous configurations of its items not bound again yet, by item name
+    private String reloadingContext;
+    private Map<String, WhistleBindingConfig> reloading = Collections.emptyMap();
+
     /**
      * {@inheritDoc}
      */
@@ -52,10 +88,24 @@ public class WhistleGenericBindingProvider extends AbstractGenericBindingProvide
      */
     @Override
     public void validateItemType(Item item, String bindingConfig) throws BindingConfigParseException {
-        if (!(item instanceof NumberItem)) {
-            throw new BindingConfigParseException(
-                    "item '" + item.getName() + "' is of type '" + item.getClass().getSimpleName()
-                            + "', only NumericItems are allowed - please check your *.items configuration");
+        String[] configParts = bindingConfig.trim().split(":");
+        if (configParts.length < 3) {
+            // Reported by processBindingConfiguration
+            return;
+        }
+        WhistleCommand command = WhistleCommand.of(configParts[1]);
+        if (command == null) {
+            throw new BindingConfigParseException("unknown command '" + configParts[1] + "'");
+        }
+        WhistleField field = WhistleField.of(command, configParts[2]);
+        if (field == null) {
+            throw new BindingConfigParseException("unknown " + configParts[1] + " field '" + configParts[2] + "'");
+        }
+        if (!field.itemType.isInstance(item)) {
+            throw new BindingConfigParseException("item '" + item.getName() + "' is of type '"
+                    + item.getClass().getSimpleName() + "', only " + field.itemType.getSimpleName()
+                    + "s are allowed for '" + configParts[1] + ":" + configParts[2]
+                    + "' - please check your *.items configuration");
         }
     }
 
@@ -68,46 +118,126 @@ public class WhistleGenericBindingProvider extends AbstractGenericBindingProvide
         logger.debug("Creating binding for item: '{}'", item);
         super.processBindingConfiguration(context, item, bindingConfig);
         String[] configParts = bindingConfig.trim().split(":");
-        if (configParts.length != 3) {
-            throw new BindingConfigParseException("whistle binding configuration must contain three parts");
+        if (configParts.length < 3) {
+            throw new BindingConfigParseException("whistle binding configuration must contain three parts, "
+                    + "an optional refresh interval and optional deadband= and republish= options");
         }
 
-        // Make sure we really do have username/password before proceeding
-        try {
-            while (WhistleBinding.username == null && WhistleBinding.password == null) {
-                logger.info("Waiting here until we have username / password details from config file");
-                Thread.sleep(30000);
+        // The dog's device is resolved later by the binding, once credentials are available, so parsing
+        // never waits for the network
+        WhistleBindingConfig config = new WhistleBindingConfig();
+        // A dog of another account than the default one is given as dogID@account
+        String dogID = configParts[0];
+        int at = dogID.lastIndexOf('@');
+        if (at >= 0) {
+            config.account = dogID.substring(at + 1).trim();
+            dogID = dogID.substring(0, at);
+            if (config.account.isEmpty()) {
+                throw new BindingConfigParseException("account name after '@' must not be empty");
+            }
+        }
+        config.dogID = dogID;
+        config.command = configParts[1];
+        config.parameter = configParts[2];
+        WhistleCommand command = WhistleCommand.of(config.command);
+        if (command == WhistleCommand.METRICS && !WhistleMetrics.isMetric(config.parameter)) {
+            // Metrics of the binding, not of a dog
+            throw new BindingConfigParseException("unknown metric '" + config.parameter + "'");
+        }
+        if (command != null && !command.needsDevice()) {
+            // Active right away, without waiting for the roster
+            config.deviceID = "";
+        }
+        for (int i = 3; i < configParts.length; i++) {
+            String part = configParts[i].trim();
+            if (part.startsWith("deadband=")) {
+                parseDeadband(config, part.substring("deadband=".length()));
+            } else if (part.startsWith("republish=")) {
+                config.republishInterval = parseSeconds(part.substring("republish=".length()), "republish interval");
+            } else if (i == 3) {
+                config.refreshInterval = parseSeconds(part, "refresh interval");
+            } else {
+                throw new BindingConfigParseException("unknown option '" + part + "'");
             }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
         }
+        // Compiled the same way when the binding refreshes the item, so anything it would reject fails here
+        try {
+            WhistleItemPlan.compile(item.getName(), config.dogID, config.account, config.command, config.parameter,
+                    config.deviceID, config.refreshInterval, config.deadband, config.deadbandPercent,
+                    config.republishInterval);
+        } catch (IllegalArgumentException e) {
+            throw new BindingConfigParseException(e.getMessage());
+        }
+        keepDevice(context, item.getName(), config);
+        logger.debug("binding configuration dogID: '{}' account: '{}' command:'{}' parameter:'{}' deviceID: '{}'",
+                config.dogID, config.account, config.command, config.parameter, config.deviceID);
+        addBindingConfig(item, config);
+    }
 
-        WhistleBindingConfig config = new WhistleBindingConfig();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeConfigurations(String context) {
+        // Remembered while the context's items are bound again, which follows right after
+        Map<String, WhistleBindingConfig> configs = new HashMap<String, WhistleBindingConfig>();
+        Set<Item> items = contextMap.get(context);
+        if (items != null) {
+            for (Item item : items) {
+                BindingConfig config = bindingConfigs.get(item.getName());
+                if (config instanceof WhistleBindingConfig) {
+                    configs.put(item.getName(), (WhistleBindingConfig) config);
+                }
+            }
+        }
+        synchronized (this) {
+            // Replaces what is left of an earlier reload, e.g. items deleted from its file
+            reloadingContext = context;
+            reloading = configs;
+        }
+        super.removeConfigurations(context);
+    }
 
-        // We want the deviceID to be part of the config and only add bindings for dogs we can "see"
-        try {
-            // Get authToken for username/password
-            if (WhistleBinding.authToken == null) {
-                WhistleBinding.authToken = WhistleBinding.getAuthToken(WhistleBinding.username,
-                        WhistleBinding.password);
-                logger.debug("got authToken '{}'", WhistleBinding.authToken);
+    // Takes over the device of the item's previous configuration if its dog is the same
+    private void keepDevice(String context, String itemName, WhistleBindingConfig config) {
+        WhistleBindingConfig previous = null;
+        synchronized (this) {
+            if (context.equals(reloadingContext)) {
+                previous = reloading.remove(itemName);
+            }
+            if (!context.equals(reloadingContext) || reloading.isEmpty()) {
+                // The reload is done once all of its items, or items of another context, have been bound
+                reloadingContext = null;
+                reloading = Collections.emptyMap();
             }
-            config.dogID = configParts[0];
-            config.command = configParts[1];
-            config.parameter = configParts[2];
+        }
+        if (previous != null && config.deviceID == null && WhistleCommand.of(previous.command).needsDevice()
+                && previous.dogID.equals(config.dogID) && previous.account.equals(config.account)) {
+            config.deviceID = previous.deviceID;
+        }
+    }
 
-            config.deviceID = WhistleBinding.GetDogDeviceID(config.dogID, WhistleBinding.authToken);
+    private static void parseDeadband(WhistleBindingConfig config, String deadband)
+            throws BindingConfigParseException {
+        config.deadbandPercent = deadband.endsWith("%");
+        try {
+            config.deadband = Double.parseDouble(
+                    config.deadbandPercent ? deadband.substring(0, deadband.length() - 1) : deadband);
+        } catch (NumberFormatException e) {
+            config.deadband = -1;
+        }
+        if (!(config.deadband >= 0)) {
+            throw new BindingConfigParseException(
+                    "deadband '" + deadband + "' must be a non-negative number, optionally followed by '%'");
+        }
+    }
 
-            if (config.deviceID != null) {
-                logger.debug("binding configuration dogID: '{}' deviceID:'{}' command:'{}' parameter:'{}'",
-                        config.dogID, config.deviceID, config.command, config.parameter);
-                addBindingConfig(item, config);
-            } else {
-                logger.error("Dog '{}' not found. Failed to add binding; command:'{}' parameter:'{}'", config.dogID,
-                        config.command, config.parameter);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Parses a number of seconds into milliseconds
+    private static long parseSeconds(String seconds, String name) throws BindingConfigParseException {
+        try {
+            return Long.parseLong(seconds.trim()) * 1000L;
+        } catch (NumberFormatException e) {
+            throw new BindingConfigParseException(name + " '" + seconds + "' must be a number of seconds");
         }
     }
 
@@ -117,6 +247,12 @@ public class WhistleGenericBindingProvider extends AbstractGenericBindingProvide
         return config != null ? config.dogID : null;
     }
 
+    @Override
+    public String getAccount(String itemName) {
+        WhistleBindingConfig config = (WhistleBindingConfig) bindingConfigs.get(itemName);
+        return config != null ? config.account : null;
+    }
+
     @Override
     public String getDeviceID(String itemName) {
         WhistleBindingConfig config = (WhistleBindingConfig) bindingConfigs.get(itemName);
@@ -135,14 +271,62 @@ public class WhistleGenericBindingProvider extends AbstractGenericBindingProvide
         return config != null ? config.parameter : null;
     }
 
+    @Override
+    public long getRefreshInterval(String itemName) {
+        WhistleBindingConfig config = (WhistleBindingConfig) bindingConfigs.get(itemName);
+        return config != null ? config.refreshInterval : 0;
+    }
+
+    @Override
+    public double getDeadband(String itemName) {
+        WhistleBindingConfig config = (WhistleBindingConfig) bindingConfigs.get(itemName);
+        return config != null ? config.deadband : 0;
+    }
+
+    @Override
+    public boolean isDeadbandPercent(String itemName) {
+        WhistleBindingConfig config = (WhistleBindingConfig) bindingConfigs.get(itemName);
+        return config != null && config.deadbandPercent;
+    }
+
+    @Override
+    public long getRepublishInterval(String itemName) {
+        WhistleBindingConfig config = (WhistleBindingConfig) bindingConfigs.get(itemName);
+        return config != null ? config.republishInterval : 0;
+    }
+
+    @Override
+    public boolean isPending(String itemName) {
+        WhistleBindingConfig config = (WhistleBindingConfig) bindingConfigs.get(itemName);
+        return config != null && config.deviceID == null;
+    }
+
+    @Override
+    public void setDeviceID(String itemName, String deviceID) {
+        WhistleBindingConfig config = (WhistleBindingConfig) bindingConfigs.get(itemName);
+        if (config != null) {
+            config.deviceID = deviceID;
+        }
+    }
+
     /*
      * This is an internal data structure to store information from the binding config
      * strings and use it to answer the requests to the Whistle binding provider.
      */
     static public class WhistleBindingConfig implements BindingConfig {
         public String dogID;
-        public String deviceID;
+        // name of the account the dog belongs to; empty for the default account
+        public String account = "";
+        // null until the binding has found the dog's device
+        public volatile String deviceID;
         public String command;
         public String parameter;
+        // in milliseconds; 0 for the binding's default
+        public long refreshInterval;
+        // smallest change published, absolute or in percent of the last published value
+        public double deadband;
+        public boolean deadbandPercent;
+        // in milliseconds; 0 for the binding's default
+        public long republishInterval;
     }
 }
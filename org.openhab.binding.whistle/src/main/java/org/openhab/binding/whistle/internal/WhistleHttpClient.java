@@ -0,0 +1,349 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP client for the Whistle API. Requests go through a {@link WhistleTransport}
+ * keeping connections alive in a bounded pool, and responses are requested gzip
+ * compressed.
+ * <p>
+ * GET responses carrying an ETag or Last-Modified validator are remembered
+ * together with their parsed result. The next request for the same URL is
+ * sent conditionally, and a 304 answer returns the remembered result without
+ * reading or parsing a body.
+ * <p>
+ * The latency, outcome and response size of each request are recorded in the
+ * {@link WhistleMetrics} of its endpoint.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleHttpClient {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleHttpClient.class);
+    private static final String USER_AGENT = "WhistleApp/102 (iPhone; iOS 7.0.4; Scale/2.00)";
+
+    static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    static final int DEFAULT_READ_TIMEOUT = 30000;
+    static final int DEFAULT_MAX_CONNECTIONS = 4;
+    // URLs whose validators are remembered; least recently used ones are dropped
+    private static final int MAX_VALIDATORS = 256;
+
+    private final WhistleMetrics metrics;
+    private volatile WhistleTransport transport = new WhistleHttpTransport();
+    private volatile boolean compression = true;
+    private int connectTimeout;
+    private int readTimeout;
+    private int maxConnections;
+    private final Map<String, Validators> validators = new LinkedHashMap<String, Validators>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Validators> eldest) {
+            return size() > MAX_VALIDATORS;
+        }
+    };
+
+    WhistleHttpClient(WhistleMetrics metrics) {
+        this.metrics = metrics;
+        configure(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_CONNECTIONS, true);
+    }
+
+    /**
+     * Applies timeouts (in milliseconds), the pool size and whether to ask for
+     * compressed responses. Takes effect for subsequent requests.
+     */
+    synchronized void configure(int connectTimeout, int readTimeout, int maxConnections, boolean compression) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConnections = maxConnections;
+        transport.configure(connectTimeout, readTimeout, maxConnections);
+        this.compression = compression;
+    }
+
+    /**
+     * Replaces the transport, e.g. by an in-process one for benchmarks, and
+     * applies the current configuration to it. The replaced transport is shut
+     * down.
+     */
+    synchronized void setTransport(WhistleTransport transport) {
+        transport.configure(connectTimeout, readTimeout, maxConnections);
+        if (transport != this.transport) {
+            this.transport.shutdown();
+        }
+        this.transport = transport;
+        clearValidators();
+    }
+
+    /**
+     * Forgets the validators and results of all responses, so the next
+     * request for each URL is unconditional.
+     */
+    void clearValidators() {
+        synchronized (validators) {
+            validators.clear();
+        }
+    }
+
+    /**
+     * Sends an authenticated GET request and hands the response body to the
+     * handler. Returns the handler's result. Validators are neither sent nor
+     * remembered, so responses requested only once, like pages of history,
+     * don't take the place of others. Throws a {@link StatusException} if the
+     * server didn't answer with 200.
+     */
+    <T> T get(String url, String authToken, ResponseHandler<T> handler) throws IOException {
+        return get(url, authToken, handler, false).value;
+    }
+
+    /**
+     * Sends an authenticated, conditional GET request. Returns the parsed
+     * response, which tells whether it is unchanged since the last request.
+     * Throws a {@link StatusException} if the server didn't answer with 200 or
+     * 304.
+     */
+    <T> Response<T> getConditional(String url, String authToken, ResponseHandler<T> handler) throws IOException {
+        return get(url, authToken, handler, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Response<T> get(String url, String authToken, ResponseHandler<T> handler, boolean conditional)
+            throws IOException {
+        Map<String, String> headers = getHeaders();
+        headers.put("X-Whistle-AuthToken", authToken);
+        Validators known = null;
+        if (conditional) {
+            synchronized (validators) {
+                known = validators.get(url);
+            }
+        }
+        if (known != null && known.handler == handler) {
+            if (known.etag != null) {
+                headers.put("If-None-Match", known.etag);
+            }
+            if (known.lastModified != null) {
+                headers.put("If-Modified-Since", known.lastModified);
+            }
+        } else {
+            known = null;
+        }
+        WhistleEndpointMetrics endpoint = metrics.getEndpoint(url);
+        long start = System.nanoTime();
+        boolean failed = true;
+        WhistleTransport.Exchange exchange = null;
+        try {
+            exchange = transport.send(url, headers, null);
+            int status = exchange.getStatus();
+            if (status == 401) {
+                throw new UnauthorizedException();
+            }
+            if (status == 304 && known != null) {
+                logger.trace("'{}' not modified", url);
+                failed = false;
+                return new Response<T>((T) known.value, false);
+            }
+            if (status != 200) {
+                throw new StatusException(status);
+            }
+            T value = read(exchange, handler, endpoint);
+            String etag = exchange.getHeader("ETag");
+            String lastModified = exchange.getHeader("Last-Modified");
+            synchronized (validators) {
+                if (conditional && value != null && (etag != null || lastModified != null)) {
+                    validators.put(url, new Validators(etag, lastModified, handler, value));
+                } else {
+                    // The server doesn't support validators for this URL, or they aren't wanted
+                    validators.remove(url);
+                }
+            }
+            failed = false;
+            return new Response<T>(value, true);
+        } finally {
+            if (exchange != null) {
+                exchange.close();
+            }
+            endpoint.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Sends a POST request with a JSON body and hands the response body to the
+     * handler. Returns the handler's result. Throws a {@link StatusException}
+     * if the server didn't answer with 200.
+     */
+    <T> T post(String url, String json, ResponseHandler<T> handler) throws IOException {
+        WhistleEndpointMetrics endpoint = metrics.getEndpoint(url);
+        long start = System.nanoTime();
+        boolean failed = true;
+        WhistleTransport.Exchange exchange = null;
+        try {
+            exchange = transport.send(url, getHeaders(), json);
+            int status = exchange.getStatus();
+            if (status != 200) {
+                throw new StatusException(status);
+            }
+            T value = read(exchange, handler, endpoint);
+            failed = false;
+            return value;
+        } finally {
+            if (exchange != null) {
+                exchange.close();
+            }
+            endpoint.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Shuts down the transport and its connections.
+     */
+    void shutdown() {
+        transport.shutdown();
+    }
+
+    private Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/json");
+        headers.put("User-Agent", USER_AGENT);
+        if (compression) {
+            headers.put("Accept-Encoding", "gzip");
+        }
+        return headers;
+    }
+
+    private static <T> T read(WhistleTransport.Exchange exchange, ResponseHandler<T> handler,
+            WhistleEndpointMetrics endpoint) throws IOException {
+        CountingInputStream body = new CountingInputStream(exchange.getBody());
+        InputStream in = body;
+        if ("gzip".equalsIgnoreCase(exchange.getHeader("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        try {
+            return handler.handle(in);
+        } finally {
+            in.close();
+            endpoint.addBytes(body.count);
+        }
+    }
+
+    /**
+     * Reads a response body, usually while it is still being received.
+     */
+    interface ResponseHandler<T> {
+        T handle(InputStream in) throws IOException;
+    }
+
+    /**
+     * Thrown when the server answers with an unexpected status code.
+     */
+    static class StatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        StatusException(int status) {
+            super("response code " + status);
+            this.status = status;
+        }
+
+        /**
+         * Returns true if the status means the server is unavailable, rather
+         * than that the request was wrong.
+         */
+        boolean isServerFailure() {
+            return status >= 500 || status == 429;
+        }
+    }
+
+    /**
+     * Thrown when the API rejects the authentication token.
+     */
+    static class UnauthorizedException extends StatusException {
+        private static final long serialVersionUID = 1L;
+
+        UnauthorizedException() {
+            super(401);
+        }
+    }
+
+    /**
+     * A parsed response. <code>modified</code> is false if the server reported
+     * the resource unchanged and the previous result was reused.
+     */
+    static class Response<T> {
+        final T value;
+        final boolean modified;
+
+        Response(T value, boolean modified) {
+            this.value = value;
+            this.modified = modified;
+        }
+    }
+
+    /*
+     * Counts the bytes read from the response body
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /*
+     * Validators and parsed result of the last 200 response for a URL
+     */
+    private static class Validators {
+        final String etag;
+        final String lastModified;
+        final ResponseHandler<?> handler;
+        final Object value;
+
+        Validators(String etag, String lastModified, ResponseHandler<?> handler, Object value) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.handler = handler;
+            this.value = value;
+        }
+    }
+}
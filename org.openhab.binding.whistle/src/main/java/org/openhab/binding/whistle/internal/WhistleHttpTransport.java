@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+/**
+ * Transport over commons-httpclient. Connections are kept alive and reused
+ * from a bounded pool, and requests time out instead of hanging the refresh
+ * thread.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleHttpTransport implements WhistleTransport {
+    private final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+    private final HttpClient client = new HttpClient(connectionManager);
+
+    @Override
+    public void configure(int connectTimeout, int readTimeout, int maxConnections) {
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setConnectionTimeout(connectTimeout);
+        params.setSoTimeout(readTimeout);
+        params.setDefaultMaxConnectionsPerHost(maxConnections);
+        params.setMaxTotalConnections(maxConnections);
+        params.setStaleCheckingEnabled(true);
+        // Don't wait forever for a connection from the pool either
+        client.getParams().setConnectionManagerTimeout(connectTimeout);
+    }
+
+    @Override
+    public Exchange send(String url, Map<String, String> headers, String body) throws IOException {
+        final HttpMethodBase method;
+        if (body != null) {
+            PostMethod post = new PostMethod(url);
+            post.setRequestEntity(new StringRequestEntity(body, "application/json", "UTF-8"));
+            method = post;
+        } else {
+            method = new GetMethod(url);
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            method.setRequestHeader(header.getKey(), header.getValue());
+        }
+        final int status;
+        try {
+            status = client.executeMethod(method);
+        } catch (IOException e) {
+            method.releaseConnection();
+            throw e;
+        }
+        return new Exchange() {
+            @Override
+            public int getStatus() {
+                return status;
+            }
+
+            @Override
+            public String getHeader(String name) {
+                Header header = method.getResponseHeader(name);
+                return header != null ? header.getValue() : null;
+            }
+
+            @Override
+            public InputStream getBody() throws IOException {
+                return method.getResponseBodyAsStream();
+            }
+
+            @Override
+            public void close() {
+                // Returns the connection to the pool
+                method.releaseConnection();
+            }
+        };
+    }
+
+    @Override
+    public void closeIdleConnections() {
+        connectionManager.closeIdleConnections(0);
+    }
+
+    @Override
+    public void shutdown() {
+        // Also unregisters the pool from commons-httpclient's idle connection handling
+        connectionManager.shutdown();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import org.openhab.binding.whistle.WhistleBindingProvider;
+import org.openhab.core.types.State;
+
+/**
+ * The binding configuration of an item, compiled once when the item is
+ * bound: its command and field as enums, its number of days as an int, the
+ * resource it reads from and the key its published values are stored under.
+ * Refresh cycles run over plans without looking up, parsing or concatenating
+ * anything per item.
+ * <p>
+ * Plans are immutable. Once the item's dog has been found, the plan is
+ * replaced by one with the device and, for commands that need it, the
+ * resource.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+final class WhistleItemPlan {
+    final String itemName;
+    final String dogID;
+    // Name of the account, empty for the default account
+    final String account;
+    final WhistleCommand command;
+    final WhistleField field;
+    final String parameter;
+    // Days for daily commands, 0 for all others
+    final int days;
+    // Days up to and including today the item needs stored, 0 for commands without daily records
+    final int historyDays;
+    // null while the item is pending
+    final String deviceID;
+    // Resource the item reads from; null while it is pending on a device and for metrics
+    final String resource;
+    // What the item's value depends on; a snapshot value is only restored for the same key
+    final String bindingKey;
+    // In milliseconds; 0 for the binding's defaults
+    final long refreshInterval;
+    final double deadband;
+    final boolean deadbandPercent;
+    final long republishInterval;
+
+    private WhistleItemPlan(WhistleItemPlan plan, String deviceID) {
+        this.itemName = plan.itemName;
+        this.dogID = plan.dogID;
+        this.account = plan.account;
+        this.command = plan.command;
+        this.field = plan.field;
+        this.parameter = plan.parameter;
+        this.days = plan.days;
+        this.historyDays = plan.historyDays;
+        this.deviceID = deviceID;
+        this.resource = deviceID != null || !command.needsDevice() ? command.getResource(dogID, deviceID) : null;
+        this.bindingKey = plan.bindingKey;
+        this.refreshInterval = plan.refreshInterval;
+        this.deadband = plan.deadband;
+        this.deadbandPercent = plan.deadbandPercent;
+        this.republishInterval = plan.republishInterval;
+    }
+
+    private WhistleItemPlan(String itemName, String dogID, String account, WhistleCommand command,
+            WhistleField field, String parameter, int days, String deviceID, long refreshInterval, double deadband,
+            boolean deadbandPercent, long republishInterval) {
+        this.itemName = itemName;
+        this.dogID = dogID;
+        this.account = account;
+        this.command = command;
+        this.field = field;
+        this.parameter = parameter;
+        this.days = days;
+        this.historyDays = command.isDaily() ? command.getHistoryDays(days) : 0;
+        this.deviceID = deviceID;
+        this.resource = deviceID != null || !command.needsDevice() ? command.getResource(dogID, deviceID) : null;
+        this.bindingKey = dogID + "@" + account + ":" + command.key + ":" + parameter;
+        this.refreshInterval = refreshInterval;
+        this.deadband = deadband;
+        this.deadbandPercent = deadbandPercent;
+        this.republishInterval = republishInterval;
+    }
+
+    /**
+     * Compiles the item's binding configuration as the provider holds it.
+     * Throws an {@link IllegalArgumentException} if it is invalid.
+     */
+    static WhistleItemPlan compile(WhistleBindingProvider provider, String itemName) {
+        String account = provider.getAccount(itemName);
+        return compile(itemName, provider.getDogID(itemName), account != null ? account : WhistleAccount.DEFAULT,
+                provider.getCommand(itemName), provider.getParameter(itemName), provider.getDeviceID(itemName),
+                provider.getRefreshInterval(itemName), provider.getDeadband(itemName),
+                provider.isDeadbandPercent(itemName), provider.getRepublishInterval(itemName));
+    }
+
+    /**
+     * Compiles a binding configuration. Throws an
+     * {@link IllegalArgumentException} if the command, the field or the number
+     * of days is invalid.
+     */
+    static WhistleItemPlan compile(String itemName, String dogID, String account, String command, String parameter,
+            String deviceID, long refreshInterval, double deadband, boolean deadbandPercent,
+            long republishInterval) {
+        WhistleCommand compiledCommand = WhistleCommand.of(command);
+        if (compiledCommand == null) {
+            throw new IllegalArgumentException("unknown command '" + command + "'");
+        }
+        WhistleField field = WhistleField.of(compiledCommand, parameter);
+        if (field == null) {
+            throw new IllegalArgumentException("unknown " + command + " field '" + parameter + "'");
+        }
+        int days = 0;
+        if (compiledCommand.isDaily()) {
+            try {
+                days = Integer.parseInt(parameter.trim());
+            } catch (NumberFormatException e) {
+                days = -1;
+            }
+            boolean aggregate = compiledCommand.isAggregate();
+            if (days < 0 || (aggregate && days == 0)) {
+                throw new IllegalArgumentException("number of days '" + parameter + "' must be "
+                        + (aggregate ? "a positive number" : "a number of 0 or more"));
+            }
+        }
+        return new WhistleItemPlan(itemName, dogID, account, compiledCommand, field, parameter, days, deviceID,
+                refreshInterval, deadband, deadbandPercent, republishInterval);
+    }
+
+    /**
+     * Returns the plan for the item bound to the device, or pending if the
+     * device is null.
+     */
+    WhistleItemPlan withDevice(String deviceID) {
+        return new WhistleItemPlan(this, deviceID);
+    }
+
+    /**
+     * Returns the item's value from the response of its resource, or null if
+     * the response doesn't have it.
+     */
+    State extract(Object data) {
+        return field.extract(this, data);
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Streaming parsers for the Whistle API responses. Each parser reads the
+ * response body token by token and keeps only the fields the binding uses;
+ * everything else is skipped without being buffered. The parsers hold no
+ * state and are shared by all requests. Dates are parsed here, once per
+ * response rather than once per item.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+final class WhistleJsonParser {
+    private WhistleJsonParser() {
+    }
+
+    /**
+     * <code>dogs/{id}/dailies</code>: day number, active minutes and goal per day
+     */
+    static final WhistleHttpClient.ResponseHandler<WhistleDailies> DAILIES = new DailiesParser();
+
+    /**
+     * <code>dogs/{id}/stats/daily_totals</code>: active and rest minutes per day
+     */
+    static final WhistleHttpClient.ResponseHandler<WhistleDailies> DAILY_TOTALS = new DailiesParser();
+
+    /**
+     * <code>dogs/{id}/stats/goals</code>: current and longest goal streak
+     */
+    static final WhistleHttpClient.ResponseHandler<Goals> GOALS = new WhistleHttpClient.ResponseHandler<Goals>() {
+        @Override
+        public Goals handle(InputStream in) throws IOException {
+            JsonReader reader = open(in);
+            try {
+                Goals goals = new Goals();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "current_streak":
+                            goals.currentStreak = nextInt(reader);
+                            break;
+                        case "longest_streak":
+                            goals.longestStreak = nextInt(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                return goals;
+            } finally {
+                reader.close();
+            }
+        }
+    };
+
+    /**
+     * <code>devices/{id}.json</code>: battery, last check in, serial number,
+     * firmware and Wi-Fi network
+     */
+    static final WhistleHttpClient.ResponseHandler<Device> DEVICE = new WhistleHttpClient.ResponseHandler<Device>() {
+        @Override
+        public Device handle(InputStream in) throws IOException {
+            JsonReader reader = open(in);
+            try {
+                Device device = new Device();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "battery_level":
+                            device.batteryLevel = nextDouble(reader);
+                            break;
+                        case "battery_status":
+                            device.batteryStatus = nextString(reader);
+                            break;
+                        case "last_check_in":
+                            // With its UTC offset, e.g. 2016-05-01T12:34:56-07:00
+                            device.lastCheckIn = nextDate(reader, "yyyy-MM-dd'T'HH:mm:ssXXX");
+                            break;
+                        case "serial_number":
+                            device.serialNumber = nextString(reader);
+                            break;
+                        case "firmware_version":
+                            device.firmwareVersion = nextString(reader);
+                            break;
+                        case "wifi_network":
+                            readWifiNetwork(reader, device);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                return device;
+            } finally {
+                reader.close();
+            }
+        }
+    };
+
+    /**
+     * <code>dogs.json</code>: ID, device and profile of each dog
+     */
+    static final WhistleHttpClient.ResponseHandler<List<WhistleRoster.Dog>> DOGS =
+            new WhistleHttpClient.ResponseHandler<List<WhistleRoster.Dog>>() {
+        @Override
+        public List<WhistleRoster.Dog> handle(InputStream in) throws IOException {
+            JsonReader reader = open(in);
+            try {
+                List<WhistleRoster.Dog> dogs = new ArrayList<WhistleRoster.Dog>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String id = null;
+                    String deviceID = null;
+                    String name = null;
+                    String breed = null;
+                    String gender = null;
+                    BigDecimal weight = null;
+                    Date birthday = null;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "id":
+                                id = nextString(reader);
+                                break;
+                            case "device_id":
+                                deviceID = nextString(reader);
+                                break;
+                            case "name":
+                                name = nextString(reader);
+                                break;
+                            case "breed":
+                                breed = nextName(reader);
+                                break;
+                            case "gender":
+                                gender = nextString(reader);
+                                break;
+                            case "weight":
+                                weight = nextDecimal(reader);
+                                break;
+                            case "birthday":
+                                birthday = nextDate(reader, "yyyy-MM-dd");
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    if (id != null) {
+                        dogs.add(new WhistleRoster.Dog(id, deviceID, name, breed, gender, weight, birthday));
+                    }
+                }
+                reader.endArray();
+                return dogs;
+            } finally {
+                reader.close();
+            }
+        }
+    };
+
+    /**
+     * <code>tokens.json</code>: the authentication token
+     */
+    static final WhistleHttpClient.ResponseHandler<String> TOKEN = new WhistleHttpClient.ResponseHandler<String>() {
+        @Override
+        public String handle(InputStream in) throws IOException {
+            JsonReader reader = open(in);
+            try {
+                String token = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("token".equals(reader.nextName())) {
+                        token = nextString(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                return token;
+            } finally {
+                reader.close();
+            }
+        }
+    };
+
+    private static class DailiesParser implements WhistleHttpClient.ResponseHandler<WhistleDailies> {
+        @Override
+        public WhistleDailies handle(InputStream in) throws IOException {
+            JsonReader reader = open(in);
+            try {
+                WhistleDailies dailies = new WhistleDailies();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    int day = WhistleDailies.NO_DAY;
+                    int active = 0;
+                    int rest = 0;
+                    int goal = 0;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "day_number":
+                                day = nextInt(reader);
+                                break;
+                            case "minutes_active":
+                                active = nextInt(reader);
+                                break;
+                            case "minutes_rest":
+                                rest = nextInt(reader);
+                                break;
+                            case "activity_goal":
+                                goal = nextInt(reader);
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    dailies.add(day, active, rest, goal);
+                }
+                reader.endArray();
+                return dailies;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static JsonReader open(InputStream in) throws IOException {
+        return new JsonReader(new InputStreamReader(in, "UTF-8"));
+    }
+
+    private static int nextInt(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return (int) Math.round(reader.nextDouble());
+    }
+
+    private static double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextDouble();
+    }
+
+    // The number as written, so it is published without rounding; null if it is missing
+    private static BigDecimal nextDecimal(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return new BigDecimal(reader.nextString());
+    }
+
+    // The date in the pattern, or null if it is missing or malformed
+    private static Date nextDate(JsonReader reader, String pattern) throws IOException {
+        String value = nextString(reader);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new SimpleDateFormat(pattern).parse(value);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    // The name of a nested object like <code>{"id":1,"name":"Mixed"}</code>
+    private static String nextName(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return nextString(reader);
+        }
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("name".equals(reader.nextName())) {
+                name = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return name;
+    }
+
+    private static void readWifiNetwork(JsonReader reader, Device device) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "ssid":
+                    device.wifiSsid = nextString(reader);
+                    break;
+                case "rssi":
+                    device.wifiRssi = nextDecimal(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /*
+     * Goal streaks of a dog
+     */
+    static class Goals {
+        int currentStreak;
+        int longestStreak;
+    }
+
+    /*
+     * Status of a Whistle device
+     */
+    static class Device {
+        double batteryLevel;
+        String batteryStatus;
+        Date lastCheckIn;
+        String serialNumber;
+        String firmwareVersion;
+        String wifiSsid;
+        BigDecimal wifiRssi;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of the requests to each Whistle API endpoint and of the refresh
+ * cycles. They are registered over JMX below
+ * <code>org.openhab.binding.whistle</code>, and can be bound to Number items
+ * with <code>whistle="_:metrics:&lt;name&gt;"</code>, e.g.
+ * <code>cycle_ms</code> or <code>dailies.p99_ms</code>.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleMetrics.class);
+    private static final String DOMAIN = "org.openhab.binding.whistle";
+
+    static final String[] ENDPOINTS = { "tokens", "dogs", "devices", "dailies", "goals", "daily_totals", "other" };
+    // Metrics of the cycles and totals over all endpoints
+    private static final String[] GLOBAL_METRICS = { "cycle_ms", "cycle_items", "cycle_requests", "cycles",
+            "requests", "errors", "bytes" };
+    // Metrics of each endpoint, named '<endpoint>.<metric>'
+    private static final String[] ENDPOINT_METRICS = { "requests", "errors", "bytes", "latency_ms", "p50_ms",
+            "p99_ms", "max_ms" };
+
+    private final Map<String, WhistleEndpointMetrics> endpoints = new LinkedHashMap<String, WhistleEndpointMetrics>();
+    private final WhistleCycleMetrics cycles = new WhistleCycleMetrics();
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    WhistleMetrics() {
+        for (String endpoint : ENDPOINTS) {
+            endpoints.put(endpoint, new WhistleEndpointMetrics());
+        }
+    }
+
+    /**
+     * Returns the metrics of the endpoint the URL belongs to.
+     */
+    WhistleEndpointMetrics getEndpoint(String url) {
+        return endpoints.get(getEndpointName(url));
+    }
+
+    WhistleCycleMetrics getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Requests to all endpoints so far.
+     */
+    long getRequestCount() {
+        long count = 0;
+        for (WhistleEndpointMetrics endpoint : endpoints.values()) {
+            count += endpoint.getRequestCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if the name can be bound to an item.
+     */
+    static boolean isMetric(String name) {
+        for (String metric : GLOBAL_METRICS) {
+            if (metric.equals(name)) {
+                return true;
+            }
+        }
+        int dot = name.indexOf('.');
+        if (dot < 0) {
+            return false;
+        }
+        String endpoint = name.substring(0, dot);
+        String metric = name.substring(dot + 1);
+        boolean knownEndpoint = false;
+        for (String candidate : ENDPOINTS) {
+            knownEndpoint |= candidate.equals(endpoint);
+        }
+        for (String candidate : ENDPOINT_METRICS) {
+            if (knownEndpoint && candidate.equals(metric)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the current value of a metric, or null if there is no such metric.
+     */
+    Number getValue(String name) {
+        switch (name) {
+            case "cycle_ms":
+                return cycles.getLastDurationMillis();
+            case "cycle_items":
+                return cycles.getLastItemsPublished();
+            case "cycle_requests":
+                return cycles.getLastRequests();
+            case "cycles":
+                return cycles.getCycleCount();
+            case "requests":
+                return getRequestCount();
+            case "errors":
+                long errors = 0;
+                for (WhistleEndpointMetrics endpoint : endpoints.values()) {
+                    errors += endpoint.getErrorCount();
+                }
+                return errors;
+            case "bytes":
+                long bytes = 0;
+                for (WhistleEndpointMetrics endpoint : endpoints.values()) {
+                    bytes += endpoint.getBytes();
+                }
+                return bytes;
+            default:
+                break;
+        }
+        int dot = name.indexOf('.');
+        WhistleEndpointMetrics endpoint = dot > 0 ? endpoints.get(name.substring(0, dot)) : null;
+        if (endpoint == null) {
+            return null;
+        }
+        switch (name.substring(dot + 1)) {
+            case "requests":
+                return endpoint.getRequestCount();
+            case "errors":
+                return endpoint.getErrorCount();
+            case "bytes":
+                return endpoint.getBytes();
+            case "latency_ms":
+                return endpoint.getLatencyMeanMillis();
+            case "p50_ms":
+                return endpoint.getLatencyP50Millis();
+            case "p99_ms":
+                return endpoint.getLatencyP99Millis();
+            case "max_ms":
+                return endpoint.getLatencyMaxMillis();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, replacing any
+     * left behind by a previous instance of the binding.
+     */
+    synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=Cycles"),
+                    new StandardMBean(cycles, WhistleCycleMetricsMBean.class));
+            for (Map.Entry<String, WhistleEndpointMetrics> endpoint : endpoints.entrySet()) {
+                register(server, new ObjectName(DOMAIN + ":type=Endpoint,name=" + endpoint.getKey()),
+                        new StandardMBean(endpoint.getValue(), WhistleEndpointMetricsMBean.class));
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to register the Whistle metrics over JMX: {}", e.toString());
+        }
+    }
+
+    synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception e) {
+                logger.debug("Failed to unregister '{}': {}", name, e.toString());
+            }
+        }
+        registered.clear();
+    }
+
+    private void register(MBeanServer server, ObjectName name, StandardMBean mbean) throws Exception {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+        registered.add(name);
+    }
+
+    // The endpoint from the path of a request URL
+    static String getEndpointName(String url) {
+        int query = url.indexOf('?');
+        String path = query >= 0 ? url.substring(0, query) : url;
+        if (path.endsWith("/tokens.json")) {
+            return "tokens";
+        } else if (path.endsWith("/dogs.json")) {
+            return "dogs";
+        } else if (path.contains("/devices/")) {
+            return "devices";
+        } else if (path.endsWith("/dailies")) {
+            return "dailies";
+        } else if (path.endsWith("/stats/goals")) {
+            return "goals";
+        } else if (path.contains("/stats/daily_totals")) {
+            return "daily_totals";
+        }
+        return "other";
+    }
+}
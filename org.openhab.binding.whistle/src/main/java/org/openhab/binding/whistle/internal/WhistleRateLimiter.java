@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+/**
+ * Token bucket limiting the rate of requests to the Whistle API. The bucket
+ * refills at the configured number of requests per second and holds at most
+ * one second's worth of requests, which may be sent in a burst.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleRateLimiter {
+    static final double DEFAULT_RATE = 5.0;
+
+    private double rate = DEFAULT_RATE;
+    private double capacity = DEFAULT_RATE;
+    private double tokens = DEFAULT_RATE;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Sets the number of requests per second; 0 or less disables the limit.
+     */
+    synchronized void configure(double rate) {
+        this.rate = rate;
+        this.capacity = Math.max(1.0, rate);
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * Waits until a request may be sent. Returns false if the thread was
+     * interrupted while waiting.
+     */
+    boolean acquire() {
+        while (true) {
+            long wait;
+            synchronized (this) {
+                if (rate <= 0) {
+                    return true;
+                }
+                refill();
+                if (tokens >= 1.0) {
+                    tokens -= 1.0;
+                    return true;
+                }
+                wait = (long) Math.ceil((1.0 - tokens) * 1000 / rate);
+            }
+            try {
+                Thread.sleep(Math.max(1, wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the fetches of a refresh cycle concurrently. At most the configured
+ * number of requests are in flight against the Whistle API at any time, and
+ * fetches still running when the cycle's deadline passes are cancelled. The
+ * cancelled fetches are kept with their batch, so they can be retried.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleRefreshEngine {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleRefreshEngine.class);
+
+    static final int DEFAULT_CONCURRENCY = 4;
+    static final long DEFAULT_DEADLINE = 120000L;
+
+    private final ThreadPoolExecutor executor;
+    private volatile long deadline = DEFAULT_DEADLINE;
+
+    WhistleRefreshEngine(String threadName) {
+        executor = new ThreadPoolExecutor(DEFAULT_CONCURRENCY, DEFAULT_CONCURRENCY, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WhistleThreadFactory(threadName));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets the number of concurrent requests and the time a cycle may take, in
+     * milliseconds.
+     */
+    void configure(int concurrency, long deadline) {
+        if (concurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(concurrency);
+            executor.setCorePoolSize(concurrency);
+        } else {
+            executor.setCorePoolSize(concurrency);
+            executor.setMaximumPoolSize(concurrency);
+        }
+        this.deadline = deadline;
+    }
+
+    /**
+     * Runs the tasks and waits until all of them completed or the deadline
+     * passed. Returns the number of tasks that completed successfully.
+     */
+    int runAll(List<Callable<Void>> tasks) {
+        return await(submitAll(tasks));
+    }
+
+    /**
+     * Starts running the tasks. The deadline counts from now.
+     */
+    Batch submitAll(List<Callable<Void>> tasks) {
+        Batch batch = new Batch(System.currentTimeMillis() + deadline, tasks);
+        for (Callable<Void> task : tasks) {
+            batch.futures.add(batch.completion.submit(task));
+        }
+        return batch;
+    }
+
+    /**
+     * Waits until all tasks of the batch completed or its deadline passed, and
+     * cancels the remaining ones, which the batch then lists as cancelled.
+     * Returns the number of tasks that completed successfully.
+     */
+    int await(Batch batch) {
+        int size = batch.futures.size();
+        int completed = 0;
+        try {
+            for (int i = 0; i < size; i++) {
+                long remaining = batch.end - System.currentTimeMillis();
+                Future<Void> future = remaining > 0 ? batch.completion.poll(remaining, TimeUnit.MILLISECONDS)
+                        : null;
+                if (future == null) {
+                    logger.warn("Refresh cycle deadline of {} ms passed, {} of {} fetches not completed", deadline,
+                            size - i, size);
+                    break;
+                }
+                try {
+                    future.get();
+                    completed++;
+                } catch (ExecutionException e) {
+                    logger.warn("Fetch failed: {}", e.getCause().toString());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < size; i++) {
+                // Tasks completed by now can't be cancelled anymore
+                if (batch.futures.get(i).cancel(true)) {
+                    batch.cancelled.add(batch.tasks.get(i));
+                }
+            }
+        }
+        return completed;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tasks submitted together, sharing a deadline.
+     */
+    class Batch {
+        private final long end;
+        private final CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+        private final List<Callable<Void>> tasks;
+        private final List<Future<Void>> futures;
+        private final List<Callable<Void>> cancelled = new ArrayList<Callable<Void>>();
+
+        private Batch(long end, List<Callable<Void>> tasks) {
+            this.end = end;
+            this.tasks = tasks;
+            this.futures = new ArrayList<Future<Void>>(tasks.size());
+        }
+
+        /**
+         * Returns the tasks cancelled before they completed, once the batch
+         * has been awaited.
+         */
+        List<Callable<Void>> getCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plans the requests of the refresh cycles. Items are grouped by the Whistle
+ * API resource (dog or device, endpoint and range) they read from, so every
+ * resource is fetched once and its response is shared by all items needing it.
+ * The plan is kept until the bindings or the configuration change.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleRequestPlanner {
+    private final Map<String, List<WhistleItemPlan>> itemsByResource =
+            new LinkedHashMap<String, List<WhistleItemPlan>>();
+    private final Set<String> resources = Collections.unmodifiableSet(itemsByResource.keySet());
+    private final Map<String, Long> intervalByResource = new HashMap<String, Long>();
+    private int itemCount;
+
+    /**
+     * Adds an item reading from the resource of its plan. The resource is
+     * refreshed at the shortest interval of its items.
+     */
+    void addItem(WhistleItemPlan plan, long interval) {
+        String resource = plan.resource;
+        List<WhistleItemPlan> items = itemsByResource.get(resource);
+        if (items == null) {
+            items = new ArrayList<WhistleItemPlan>();
+            itemsByResource.put(resource, items);
+            intervalByResource.put(resource, interval);
+        } else if (interval < intervalByResource.get(resource)) {
+            intervalByResource.put(resource, interval);
+        }
+        items.add(plan);
+        itemCount++;
+    }
+
+    /**
+     * Returns the unique resources to fetch, in the order they were first planned.
+     */
+    Set<String> getResources() {
+        return resources;
+    }
+
+    /**
+     * Returns the items sharing the response of the given resource.
+     */
+    List<WhistleItemPlan> getItems(String resource) {
+        List<WhistleItemPlan> items = itemsByResource.get(resource);
+        return items != null ? Collections.unmodifiableList(items) : Collections.<WhistleItemPlan> emptyList();
+    }
+
+    /**
+     * Returns the refresh interval of the resource in milliseconds.
+     */
+    long getInterval(String resource) {
+        Long interval = intervalByResource.get(resource);
+        return interval != null ? interval : 0;
+    }
+
+    int getResourceCount() {
+        return itemsByResource.size();
+    }
+
+    int getItemCount() {
+        return itemCount;
+    }
+}
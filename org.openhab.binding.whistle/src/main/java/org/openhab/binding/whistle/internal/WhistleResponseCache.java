@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Last parsed response of each resource of an account, shared by the refresh
+ * cycle, which stores every response it fetches, and by items that are bound
+ * or activated in between, which are published from it without a request.
+ * <p>
+ * An entry older than the time to live of its endpoint is stale: it is still
+ * served, but its reader should have it revalidated.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleResponseCache {
+    static final long DEFAULT_TTL = 900000L;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private volatile Map<String, Long> timesToLive = Collections.emptyMap();
+    private volatile long defaultTimeToLive = DEFAULT_TTL;
+
+    /**
+     * Sets the time to live in milliseconds by endpoint, as named by
+     * {@link WhistleMetrics#ENDPOINTS}, and for all other endpoints.
+     */
+    void configure(Map<String, Long> timesToLive, long defaultTimeToLive) {
+        this.timesToLive = new HashMap<String, Long>(timesToLive);
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    void put(String resource, Object value) {
+        entries.put(resource, new Entry(value, System.currentTimeMillis()));
+    }
+
+    /**
+     * Returns the cached response of the resource, stale or not, or null if
+     * there is none.
+     */
+    Entry get(String resource) {
+        return entries.get(resource);
+    }
+
+    boolean isStale(String resource, Entry entry) {
+        Long timeToLive = timesToLive.get(WhistleMetrics.getEndpointName("/" + resource));
+        return System.currentTimeMillis() - entry.time >= (timeToLive != null ? timeToLive : defaultTimeToLive);
+    }
+
+    /**
+     * Drops the responses of resources no longer read by any item.
+     */
+    void retain(Set<String> resources) {
+        entries.keySet().retainAll(resources);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * A parsed response and when it was fetched.
+     */
+    static class Entry {
+        final Object value;
+        final long time;
+
+        Entry(Object value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+}
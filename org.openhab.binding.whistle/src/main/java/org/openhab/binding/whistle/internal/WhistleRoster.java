@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the dogs visible to the account, indexed by dog ID. The roster is
+ * built from a single <code>dogs.json</code> download and reloaded when it is
+ * older than the configured time to live, or when a lookup misses and the
+ * roster has not been reloaded recently. A failed reload isn't tried again
+ * for a while either, so the items resolved after it don't each request
+ * the roster.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleRoster {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleRoster.class);
+    // Don't reload more often than this on lookup misses or after a failed reload
+    private static final long MISS_RELOAD_INTERVAL = 60000L;
+
+    private final WhistleAccount account;
+    private volatile Map<String, Dog> dogs = Collections.emptyMap();
+    private volatile long loadedAt;
+    // Time of the last reload, successful or not
+    private volatile long attemptedAt;
+    private volatile long timeToLive = 3600000L;
+
+    WhistleRoster(WhistleAccount account) {
+        this.account = account;
+    }
+
+    /**
+     * Returns the dog with the given ID, reloading the roster first if it is
+     * expired or doesn't know the dog yet. Returns <code>null</code> if the dog
+     * is not visible to the account.
+     */
+    Dog getDog(String dogID) throws Exception {
+        long now = System.currentTimeMillis();
+        Dog dog = dogs.get(dogID);
+        boolean reload = now - loadedAt > timeToLive || (dog == null && now - loadedAt > MISS_RELOAD_INTERVAL);
+        boolean failed = attemptedAt > loadedAt;
+        if (reload && (!failed || now - attemptedAt > MISS_RELOAD_INTERVAL)) {
+            reload(attemptedAt);
+            dog = dogs.get(dogID);
+        }
+        return dog;
+    }
+
+    /**
+     * Returns the dog with the given ID as last loaded, without reloading the
+     * roster, or <code>null</code> if it isn't known.
+     */
+    Dog getCachedDog(String dogID) {
+        return dogs.get(dogID);
+    }
+
+    // Only one thread reloads; others waiting for the lock reuse its result, even if it failed
+    private synchronized void reload(long seenAttemptedAt) throws Exception {
+        if (attemptedAt != seenAttemptedAt) {
+            return;
+        }
+        attemptedAt = System.currentTimeMillis();
+        List<Dog> response = account.getData("dogs.json", WhistleJsonParser.DOGS);
+        if (response == null) {
+            logger.warn("Failed to load the list of dogs of account '{}'", account);
+            return;
+        }
+        Map<String, Dog> roster = new HashMap<String, Dog>();
+        for (Dog dog : response) {
+            logger.info("Found DogID: '{}' / '{}'", dog.id, dog.name);
+            roster.put(dog.id, dog);
+        }
+        dogs = roster;
+        loadedAt = attemptedAt;
+    }
+
+    /**
+     * Forces the next lookup to reload the roster.
+     */
+    synchronized void invalidate() {
+        loadedAt = 0;
+        attemptedAt = 0;
+    }
+
+    /**
+     * Forgets the dogs, e.g. of another login, so neither lookups nor cached
+     * lookups find them until the roster has been reloaded.
+     */
+    synchronized void clear() {
+        dogs = Collections.emptyMap();
+        loadedAt = 0;
+        attemptedAt = 0;
+    }
+
+    void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /*
+     * A dog as listed in dogs.json, with its profile; fields missing from the response are null
+     */
+    static class Dog {
+        final String id;
+        final String deviceID;
+        final String name;
+        final String breed;
+        final String gender;
+        final BigDecimal weight;
+        final Date birthday;
+
+        Dog(String id, String deviceID, String name, String breed, String gender, BigDecimal weight,
+                Date birthday) {
+            this.id = id;
+            this.deviceID = deviceID;
+            this.name = name;
+            this.breed = breed;
+            this.gender = gender;
+            this.weight = weight;
+            this.birthday = birthday;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which resources are due on a refresh tick. Each resource has its own
+ * interval and is fetched once that interval has passed since it was last
+ * fetched. Ticks happen at a fixed rate, so a resource counts as due when it
+ * will have reached its interval before the next tick.
+ * <p>
+ * Unless staggering is disabled, each resource is fetched in its own slot:
+ * at a stable offset within its interval, derived from a hash of the
+ * resource. Resources with the same interval are thereby spread over the
+ * interval instead of being fetched on the same tick, while each keeps its
+ * period. An optional random jitter delays each fetch a little further.
+ * <p>
+ * When the interval of a resource changes, its next fetch is moved to the new
+ * interval counted from its last fetch, without fetching it early.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleScheduler {
+    // Last fetch and next due time by resource
+    private final Map<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+    private final Random random = new Random();
+    private volatile boolean stagger = true;
+    private volatile long jitter;
+
+    /**
+     * Sets whether resources are fetched in their own slot, and the maximum
+     * random delay of each fetch in milliseconds.
+     */
+    void configure(boolean stagger, long jitter) {
+        this.stagger = stagger;
+        this.jitter = Math.max(0, jitter);
+    }
+
+    /**
+     * Returns true if the resource has never been fetched or is due before the
+     * tick after <code>now</code>.
+     */
+    boolean isDue(String resource, long now, long tick) {
+        Slot slot = slots.get(resource);
+        return slot == null || slot.due - tick / 2 <= now;
+    }
+
+    /**
+     * Records that the resource was fetched and when it is due again.
+     */
+    void fetched(String resource, long now, long interval) {
+        long due = now + interval;
+        if (stagger && interval > 0) {
+            // The resource's first slot at least half an interval from now: a full interval after a fetch in
+            // its slot, less after the first fetch, which happens on the first tick
+            long earliest = now + interval / 2;
+            due = earliest + mod(getOffset(resource, interval) - earliest, interval);
+        }
+        if (jitter > 0) {
+            due += (long) (random.nextDouble() * jitter);
+        }
+        slots.put(resource, new Slot(now, interval, due));
+    }
+
+    /**
+     * Moves the next fetch of the resource to the new interval, counted from
+     * its last fetch. Does nothing if the interval hasn't changed.
+     */
+    void reschedule(String resource, long interval) {
+        Slot slot = slots.get(resource);
+        if (slot != null && slot.interval != interval) {
+            fetched(resource, slot.fetched, interval);
+        }
+    }
+
+    /**
+     * Returns the offset of the resource's slots within the interval.
+     */
+    static long getOffset(String resource, long interval) {
+        // Spreads similar names, like those of one dog's resources, over the whole range
+        long hash = resource.hashCode() * 0x9E3779B97F4A7C15L;
+        return mod(hash ^ (hash >>> 32), interval);
+    }
+
+    private static long mod(long value, long divisor) {
+        long remainder = value % divisor;
+        return remainder < 0 ? remainder + divisor : remainder;
+    }
+
+    /**
+     * Makes the resource due on the next tick.
+     */
+    void reset(String resource) {
+        slots.remove(resource);
+    }
+
+    /**
+     * Makes all resources due on the next tick.
+     */
+    void clear() {
+        slots.clear();
+    }
+
+    /**
+     * Forgets resources no item reads from anymore.
+     */
+    void retain(Set<String> resources) {
+        for (Iterator<String> it = slots.keySet().iterator(); it.hasNext();) {
+            if (!resources.contains(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    /*
+     * When a resource was last fetched, with which interval, and when it is due again
+     */
+    private static class Slot {
+        final long fetched;
+        final long interval;
+        final long due;
+
+        Slot(long fetched, long interval, long due) {
+            this.fetched = fetched;
+            this.interval = interval;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last published value of each item and the device of each dog, kept on disk
+ * so a restart can publish them before the first refresh has completed.
+ * <p>
+ * The file is a journal of tab separated lines: changes are collected in
+ * memory and appended in one write by {@link #flush()}, later lines replacing
+ * earlier ones. Once most lines are outdated, the file is rewritten with the
+ * current entries only. A line cut short by a crash is ignored.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleSnapshot.class);
+    private static final String VALUE = "V";
+    private static final String DEVICE = "D";
+    private static final String REMOVED = "X";
+    // Outdated lines kept before the file is rewritten
+    private static final int MIN_GARBAGE = 256;
+
+    private final File file;
+    private final Map<String, Value> values = new HashMap<String, Value>();
+    private final Map<String, String> devices = new HashMap<String, String>();
+    // Lines not written yet, by key so repeated changes are written once
+    private final Map<String, String> pending = new LinkedHashMap<String, String>();
+    private int lines;
+
+    WhistleSnapshot(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the file, if there is one.
+     */
+    synchronized void load() {
+        values.clear();
+        devices.clear();
+        pending.clear();
+        lines = 0;
+        if (!file.isFile()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                apply(line.split("\t", -1));
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read '{}': {}", file, e.getMessage());
+        }
+        logger.debug("Loaded '{}' values and '{}' devices from '{}'", values.size(), devices.size(), file);
+    }
+
+    /**
+     * Returns the value last published to the item, or null if it is unknown
+     * or was published for a different binding configuration.
+     */
+    synchronized Value getValue(String itemName, String binding) {
+        Value value = values.get(itemName);
+        return value != null && value.binding.equals(binding) ? value : null;
+    }
+
+    synchronized void putValue(String itemName, String binding, State state) {
+        String type = getType(state);
+        if (type == null) {
+            return;
+        }
+        Value value = new Value(binding, System.currentTimeMillis(), state);
+        values.put(itemName, value);
+        pending.put(VALUE + itemName, join(VALUE, itemName, binding, String.valueOf(value.timestamp), type,
+                state.toString()));
+    }
+
+    synchronized void removeValue(String itemName) {
+        if (values.remove(itemName) != null) {
+            pending.put(VALUE + itemName, join(REMOVED, itemName));
+        }
+    }
+
+    /**
+     * Returns the device of the account's dog, or null if it is unknown.
+     */
+    synchronized String getDeviceID(String account, String dogID) {
+        return devices.get(account + "\t" + dogID);
+    }
+
+    synchronized void putDeviceID(String account, String dogID, String deviceID) {
+        String key = account + "\t" + dogID;
+        if (!deviceID.equals(devices.put(key, deviceID))) {
+            pending.put(DEVICE + key, join(DEVICE, account, dogID, deviceID));
+        }
+    }
+
+    /**
+     * Writes the changes since the last flush.
+     */
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Failed to create '{}'", directory);
+            return;
+        }
+        int entries = values.size() + devices.size();
+        if (lines + pending.size() - entries > Math.max(MIN_GARBAGE, entries)) {
+            rewrite(entries);
+        } else {
+            append();
+        }
+    }
+
+    private void append() {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8")) {
+            for (String line : pending.values()) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            lines += pending.size();
+            pending.clear();
+        } catch (IOException e) {
+            logger.warn("Failed to write '{}': {}", file, e.getMessage());
+        }
+    }
+
+    private void rewrite(int entries) {
+        List<String> current = new ArrayList<String>(entries);
+        for (Map.Entry<String, String> device : devices.entrySet()) {
+            String[] key = device.getKey().split("\t", -1);
+            current.add(join(DEVICE, key[0], key[1], device.getValue()));
+        }
+        for (Map.Entry<String, Value> entry : values.entrySet()) {
+            Value value = entry.getValue();
+            current.add(join(VALUE, entry.getKey(), value.binding, String.valueOf(value.timestamp),
+                    getType(value.state), value.state.toString()));
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8")) {
+            for (String line : current) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write '{}': {}", temporary, e.getMessage());
+            return;
+        }
+        if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+            logger.warn("Failed to replace '{}'", file);
+            return;
+        }
+        logger.debug("Compacted '{}' from '{}' to '{}' lines", file, lines + pending.size(), current.size());
+        lines = current.size();
+        pending.clear();
+    }
+
+    private void apply(String[] fields) {
+        try {
+            if (VALUE.equals(fields[0]) && fields.length == 6) {
+                State state = parseState(fields[4], unescape(fields[5]));
+                if (state != null) {
+                    values.put(unescape(fields[1]),
+                            new Value(unescape(fields[2]), Long.parseLong(fields[3]), state));
+                }
+            } else if (DEVICE.equals(fields[0]) && fields.length == 4) {
+                devices.put(unescape(fields[1]) + "\t" + unescape(fields[2]), unescape(fields[3]));
+            } else if (REMOVED.equals(fields[0]) && fields.length == 2) {
+                values.remove(unescape(fields[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            logger.debug("Ignoring line of '{}': {}", file, e.toString());
+        }
+    }
+
+    private static String getType(State state) {
+        if (state instanceof DecimalType) {
+            return "decimal";
+        } else if (state instanceof DateTimeType) {
+            return "datetime";
+        } else if (state instanceof OnOffType) {
+            return "onoff";
+        } else if (state instanceof StringType) {
+            return "string";
+        }
+        return null;
+    }
+
+    private static State parseState(String type, String value) {
+        switch (type) {
+            case "decimal":
+                return new DecimalType(value);
+            case "datetime":
+                return new DateTimeType(value);
+            case "onoff":
+                return OnOffType.valueOf(value);
+            case "string":
+                return new StringType(value);
+            default:
+                return null;
+        }
+    }
+
+    private static String join(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (String field : fields) {
+            if (line.length() > 0) {
+                line.append('\t');
+            }
+            line.append(escape(field));
+        }
+        return line.toString();
+    }
+
+    // Keeps tabs and line breaks within values from splitting the line
+    private static String escape(String field) {
+        if (field.indexOf('\\') < 0 && field.indexOf('\t') < 0 && field.indexOf('\n') < 0
+                && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return field.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder unescaped = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * A published value, the binding configuration it was published for and
+     * when.
+     */
+    static class Value {
+        final String binding;
+        final long timestamp;
+        final State state;
+
+        Value(String binding, long timestamp, State state) {
+            this.binding = binding;
+            this.timestamp = timestamp;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Holds the authentication token of a Whistle account. The token is kept on
+ * disk so a restart doesn't need a new login. When many threads need a token
+ * at once, only one of them logs in and the others use its result. A token the
+ * API rejected is invalidated, so the next request logs in again.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+class WhistleTokenManager {
+    private static final Logger logger = LoggerFactory.getLogger(WhistleTokenManager.class);
+    // Don't retry a failed login more often than this
+    private static final long LOGIN_RETRY_INTERVAL = 60000L;
+
+    private final WhistleHttpClient httpClient;
+    private String loginURL;
+    private String username;
+    private String password;
+    private File tokenFile;
+    private volatile String token;
+    private long lastFailedLogin;
+
+    WhistleTokenManager(WhistleHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Sets the login URL, the account and the file the token is kept in. A
+     * different URL, username or password invalidates the current token,
+     * including the saved one.
+     */
+    synchronized void configure(String loginURL, String username, String password, File tokenFile) {
+        boolean changed = !equals(this.loginURL, loginURL) || !equals(this.username, username)
+                || !equals(this.password, password);
+        if (changed && this.loginURL != null) {
+            deleteTokenFile();
+        }
+        this.loginURL = loginURL;
+        this.username = username;
+        this.password = password;
+        this.tokenFile = tokenFile;
+        if (changed) {
+            token = null;
+            lastFailedLogin = 0;
+        }
+        if (token == null) {
+            token = load();
+        }
+    }
+
+    boolean hasCredentials() {
+        return username != null && password != null;
+    }
+
+    /**
+     * Returns the current token, logging in if there is none. Returns
+     * <code>null</code> if the login failed.
+     */
+    String getToken() {
+        String current = token;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            // Another thread may have logged in while this one was waiting
+            if (token == null && hasCredentials()
+                    && System.currentTimeMillis() - lastFailedLogin > LOGIN_RETRY_INTERVAL) {
+                token = login();
+                if (token != null) {
+                    save(token);
+                } else {
+                    lastFailedLogin = System.currentTimeMillis();
+                }
+            }
+            return token;
+        }
+    }
+
+    /**
+     * Discards the token after the API rejected it. Does nothing if the token
+     * has already been replaced.
+     */
+    synchronized void invalidate(String rejected) {
+        if (rejected != null && rejected.equals(token)) {
+            logger.info("Whistle rejected the authentication token, logging in again");
+            token = null;
+            lastFailedLogin = 0;
+            deleteTokenFile();
+        }
+    }
+
+    private void deleteTokenFile() {
+        if (tokenFile != null && !tokenFile.delete() && tokenFile.exists()) {
+            logger.warn("Failed to delete '{}'", tokenFile);
+        }
+    }
+
+    // HTTP POST request to get Authentication Token from Whistle
+    private String login() {
+        logger.debug("Logging in to Whistle as '{}'", username);
+        JsonObject request = new JsonObject();
+        request.addProperty("password", password);
+        request.addProperty("email", username);
+        request.addProperty("app_id", "com.whistle.WhistleApp");
+        try {
+            return httpClient.post(loginURL, request.toString(), WhistleJsonParser.TOKEN);
+        } catch (WhistleHttpClient.StatusException e) {
+            if (e.isServerFailure()) {
+                logger.error("Failed to get AuthenticationToken: {}", e.getMessage());
+            } else {
+                logger.error("Username / password combination didn't work. Failed to get AuthenticationToken");
+            }
+        } catch (IOException e) {
+            logger.error("Failed to get AuthenticationToken: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    // The file holds the username and the token, so a token is never used for another account
+    private String load() {
+        if (tokenFile == null || !tokenFile.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(tokenFile), "UTF-8"))) {
+            String savedUsername = reader.readLine();
+            String savedToken = reader.readLine();
+            if (equals(savedUsername, username) && savedToken != null && !savedToken.isEmpty()) {
+                logger.debug("Using the saved authentication token for '{}'", username);
+                return savedToken;
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read '{}': {}", tokenFile, e.getMessage());
+        }
+        return null;
+    }
+
+    private void save(String value) {
+        if (tokenFile == null) {
+            return;
+        }
+        File directory = tokenFile.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Failed to create '{}'", directory);
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tokenFile), "UTF-8")) {
+            // Only the owner may read the token
+            tokenFile.setReadable(false, false);
+            tokenFile.setReadable(true, true);
+            writer.write(username + "\n" + value + "\n");
+        } catch (IOException e) {
+            logger.warn("Failed to write '{}': {}", tokenFile, e.getMessage());
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
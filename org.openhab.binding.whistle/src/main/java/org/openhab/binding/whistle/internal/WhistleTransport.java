@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2010-2016 by the respective copyright holders.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.whistle.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Sends HTTP requests for the {@link WhistleHttpClient}. The client takes care
+ * of the Whistle specific headers, validators and status handling; a transport
+ * only moves requests and responses, so it can be replaced by an in-process
+ * one when measuring the binding.
+ *
+ * @author John Jore
+ * @since 1.9.0
+ */
+interface WhistleTransport {
+
+    /**
+     * Applies timeouts (in milliseconds) and the connection pool size.
+     */
+    void configure(int connectTimeout, int readTimeout, int maxConnections);
+
+    /**
+     * Sends a request; <code>body</code> is <code>null</code> for a GET. The
+     * returned exchange must be closed.
+     */
+    Exchange send(String url, Map<String, String> headers, String body) throws IOException;
+
+    /**
+     * Closes connections that are not in use.
+     */
+    void closeIdleConnections();
+
+    /**
+     * Closes all connections and releases the pool; the transport can't send
+     * requests afterwards.
+     */
+    void shutdown();
+
+    /**
+     * The response to a request.
+     */
+    interface Exchange {
+        int getStatus();
+
+        /**
+         * Returns the value of the response header, or <code>null</code>.
+         */
+        String getHeader(String name);
+
+        /**
+         * Returns the response body as received, before any decompression.
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * Releases the connection of the exchange.
+         */
+        void close();
+    }
+}